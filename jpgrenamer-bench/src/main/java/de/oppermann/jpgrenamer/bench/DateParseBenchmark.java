@@ -0,0 +1,78 @@
+package de.oppermann.jpgrenamer.bench;
+
+import de.oppermann.jpgrenamer.core.ExifDateParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing an EXIF date with the {@link ExifDateParser} next to the SimpleDateFormat created per lookup
+ * which it replaced. Every invocation parses the next date of a small set, so the scores are per date.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DateParseBenchmark {
+
+    /**
+     * The pattern of the EXIF date, as used with the SimpleDateFormat before
+     */
+    private static final String EXIF_DATE_PATTERN = "yyyy:MM:dd HH:mm:ss";
+
+    private static final String[] DATES = {"2021:10:01 13:45:59\0", "2019:02:28 07:03:12\0", "2008:12:31 23:59:00\0", "2015:06:15 00:00:01\0"};
+
+    private final byte[][] values = new byte[DATES.length][];
+
+    private int nextDate;
+
+    public DateParseBenchmark() {
+        for (int i = 0; i < DATES.length; i++) {
+            values[i] = DATES[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Returns the index of the next date, starting over after the last date
+     * @return the index
+     */
+    private int nextDate() {
+        int index = nextDate;
+        nextDate = (nextDate + 1) % DATES.length;
+        return index;
+    }
+
+    /**
+     * Parsing the bytes of the tag, as done by the loader for every file
+     * @return the date
+     */
+    @Benchmark
+    public LocalDateTime exifDateParser() {
+        return ExifDateParser.parse(values[nextDate()]);
+    }
+
+    /**
+     * Parsing the String value of the tag with a new SimpleDateFormat, as done before the ExifDateParser
+     * @return the date
+     * @throws ParseException if the date is malformed
+     */
+    @Benchmark
+    public Date simpleDateFormat() throws ParseException {
+        return new SimpleDateFormat(EXIF_DATE_PATTERN).parse(DATES[nextDate()]);
+    }
+}
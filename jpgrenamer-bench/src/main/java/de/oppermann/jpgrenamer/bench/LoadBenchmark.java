@@ -0,0 +1,219 @@
+package de.oppermann.jpgrenamer.bench;
+
+import de.oppermann.jpgrenamer.core.CorpusGenerator;
+import de.oppermann.jpgrenamer.core.JpegHeader;
+import de.oppermann.jpgrenamer.core.JpgMetadata;
+import org.apache.commons.imaging.ImageInfo;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures the steps of loading a file separately: reading the metadata, reading the image information and
+ * extracting the thumbnail. Every invocation processes the next file of the corpus, so the scores are per file.
+ * The header pass of {@link JpegHeader} is measured next to the commons-imaging calls it replaced.
+ * The files are read from the page cache, as when a directory is opened again.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LoadBenchmark {
+
+    /**
+     * The seed of the corpus generated by the {@link CorpusGenerator}
+     */
+    private static final long CORPUS_SEED = 20211001L;
+
+    /**
+     * The directory of the corpus. If empty, a corpus is generated in a temporary directory.
+     */
+    @Param("")
+    public String corpus;
+
+    /**
+     * The number of files of the generated corpus
+     */
+    @Param("64")
+    public int corpusSize;
+
+    private Path generatedCorpus;
+
+    private File[] files;
+
+    /**
+     * The embedded thumbnails of the corpus, extracted beforehand to measure decoding on its own
+     */
+    private byte[][] thumbnails;
+
+    private int nextFile;
+
+    private int nextThumbnail;
+
+    /**
+     * Finds the files of the corpus and extracts their thumbnails
+     * @throws IOException if the corpus cannot be created or read
+     * @throws ImageReadException if a file of the corpus is not a JPG file
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ImageReadException {
+        Path directory;
+        if(corpus.isEmpty()) {
+            generatedCorpus = Files.createTempDirectory("jpgrenamer-bench");
+            new CorpusGenerator(CORPUS_SEED).generate(generatedCorpus, corpusSize);
+            directory = generatedCorpus;
+        } else {
+            directory = Path.of(corpus);
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            // sorted, so every run processes the files in the same order
+            files = paths.filter(JpgMetadata::isJpgFile).sorted().map(Path::toFile).toArray(File[]::new);
+        }
+        if(files.length == 0) {
+            throw new IOException(String.format("The corpus at \"%s\" contains no JPG files.", directory.toAbsolutePath()));
+        }
+        List<byte[]> embedded = new ArrayList<>();
+        for (File file : files) {
+            byte[] thumbnail = JpegHeader.read(file).getThumbnailData();
+            if(thumbnail != null) {
+                embedded.add(thumbnail);
+            }
+        }
+        thumbnails = embedded.toArray(byte[][]::new);
+    }
+
+    /**
+     * Deletes the generated corpus
+     * @throws IOException if a file cannot be deleted
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if(generatedCorpus == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(generatedCorpus)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Returns the next file of the corpus, starting over after the last file
+     * @return the file
+     */
+    private File nextFile() {
+        File file = files[nextFile];
+        nextFile = (nextFile + 1) % files.length;
+        return file;
+    }
+
+    //region metadata
+
+    /**
+     * The complete load of a file, as done by the loader for every file not found in the index
+     * @return the metadata
+     * @throws IOException if the file cannot be read
+     * @throws ImageReadException if the file is not a JPG file
+     */
+    @Benchmark
+    public JpgMetadata metadata() throws IOException, ImageReadException {
+        return JpgMetadata.read(nextFile());
+    }
+
+    /**
+     * The single pass over the header segments, which reads the EXIF data and the frame header
+     * @return the header
+     * @throws IOException if the file cannot be read
+     * @throws ImageReadException if the file is not a JPG file
+     */
+    @Benchmark
+    public JpegHeader header() throws IOException, ImageReadException {
+        return JpegHeader.read(nextFile());
+    }
+
+    /**
+     * Reading the metadata with commons-imaging, as done before the header pass
+     * @return the metadata
+     * @throws IOException if the file cannot be read
+     * @throws ImageReadException if the file is not a JPG file
+     */
+    @Benchmark
+    public ImageMetadata imagingMetadata() throws IOException, ImageReadException {
+        return Imaging.getMetadata(nextFile());
+    }
+
+    //endregion
+
+    //region image info
+
+    /**
+     * Reading the dimensions with commons-imaging, as done before the header pass
+     * @return the image information
+     * @throws IOException if the file cannot be read
+     * @throws ImageReadException if the file is not a JPG file
+     */
+    @Benchmark
+    public ImageInfo imagingImageInfo() throws IOException, ImageReadException {
+        return Imaging.getImageInfo(nextFile());
+    }
+
+    //endregion
+
+    //region thumbnail
+
+    /**
+     * Extracting the encoded thumbnail embedded in the EXIF data
+     * @return the encoded thumbnail, or null
+     * @throws IOException if the file cannot be read
+     * @throws ImageReadException if the file is not a JPG file
+     */
+    @Benchmark
+    public byte[] thumbnailExtraction() throws IOException, ImageReadException {
+        return JpegHeader.read(nextFile()).getThumbnailData();
+    }
+
+    /**
+     * Decoding an embedded thumbnail, as done by the UI when a file is selected
+     * @return the thumbnail, or null, if the corpus contains no thumbnails
+     * @throws IOException if the thumbnail cannot be read
+     * @throws ImageReadException if the thumbnail is not a valid image
+     */
+    @Benchmark
+    public BufferedImage thumbnailDecoding() throws IOException, ImageReadException {
+        if(thumbnails.length == 0) {
+            return null;
+        }
+        byte[] thumbnail = thumbnails[nextThumbnail];
+        nextThumbnail = (nextThumbnail + 1) % thumbnails.length;
+        return Imaging.getBufferedImage(thumbnail);
+    }
+
+    //endregion
+}
@@ -0,0 +1,344 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.ImageWriteException;
+import org.apache.commons.imaging.formats.jpeg.exif.ExifRewriter;
+import org.apache.commons.imaging.formats.tiff.JpegImageData;
+import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryConstants;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
+import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * This class writes a synthetic corpus of JPG files for benchmarks and scale tests. The files only depend on the seed
+ * and the settings, so the same corpus can be recreated on every machine.
+ * <p>
+ * Every file gets a camera model; the EXIF date, the embedded thumbnail and taking the picture in the same second
+ * as the previous one (a burst, whose files get the same name) are chosen at random with the given ratios.
+ * The modification date of every file is set to its date, which is the date of a file without EXIF date, so the names planned for these files are reproducible, too.
+ * The image data is encoded once per size and shared by all files of that size, so thousands of files are written quickly.
+ */
+public class CorpusGenerator {
+
+    /**
+     * The default distribution of the image sizes: mostly camera and phone pictures, a few panoramas with large dimensions
+     */
+    public static final List<Size> DEFAULT_SIZES = List.of(new Size(4000, 3000, 70), new Size(1920, 1080, 25), new Size(8000, 6000, 5));
+
+    /**
+     * The default ratio of files with an EXIF date
+     */
+    public static final double DEFAULT_DATE_RATIO = 0.9;
+
+    /**
+     * The default ratio of files with an embedded thumbnail
+     */
+    public static final double DEFAULT_THUMBNAIL_RATIO = 0.5;
+
+    /**
+     * The default ratio of files taken in the same second as the previous file
+     */
+    public static final double DEFAULT_BURST_RATIO = 0.1;
+
+    private static final String[] MODELS = {"Canon EOS 5D Mark IV", "NIKON D750", "Pixel 7", "iPhone 13"};
+
+    private static final DateTimeFormatter EXIF_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private static final LocalDateTime FIRST_DATE = LocalDateTime.of(2021, 7, 4, 10, 0, 0);
+
+    /**
+     * The maximum number of seconds between two pictures which are not taken in a burst
+     */
+    private static final int MAX_GAP_SECONDS = 600;
+
+    private static final int THUMBNAIL_WIDTH = 160;
+
+    private static final int THUMBNAIL_HEIGHT = 120;
+
+    private final long seed;
+
+    private final List<Size> sizes;
+
+    private final int totalWeight;
+
+    private final double dateRatio;
+
+    private final double thumbnailRatio;
+
+    private final double burstRatio;
+
+    /**
+     * Creates a new generator with the default sizes and ratios
+     * @param seed the seed of the corpus
+     */
+    public CorpusGenerator(long seed) {
+        this(seed, DEFAULT_SIZES);
+    }
+
+    /**
+     * Creates a new generator with the default ratios: 90 % of the files have an EXIF date,
+     * half of the files embed a thumbnail and 10 % of the files are taken in the same second as the previous one
+     * @param seed the seed of the corpus
+     * @param sizes the image sizes and their weights
+     */
+    public CorpusGenerator(long seed, List<Size> sizes) {
+        this(seed, sizes, DEFAULT_DATE_RATIO, DEFAULT_THUMBNAIL_RATIO, DEFAULT_BURST_RATIO);
+    }
+
+    /**
+     * Creates a new generator
+     * @param seed the seed of the corpus
+     * @param sizes the image sizes and their weights
+     * @param dateRatio the ratio of files with an EXIF date, between 0 and 1
+     * @param thumbnailRatio the ratio of files with an embedded thumbnail, between 0 and 1
+     * @param burstRatio the ratio of files taken in the same second as the previous file, between 0 and 1
+     */
+    public CorpusGenerator(long seed, List<Size> sizes, double dateRatio, double thumbnailRatio, double burstRatio) {
+        if(sizes.isEmpty()) {
+            throw new IllegalArgumentException("At least one size is required");
+        }
+        for (double ratio : new double[] {dateRatio, thumbnailRatio, burstRatio}) {
+            if(!(ratio >= 0 && ratio <= 1)) {
+                throw new IllegalArgumentException(String.format("The ratio %s is not between 0 and 1", ratio));
+            }
+        }
+        this.seed = seed;
+        this.sizes = List.copyOf(sizes);
+        this.totalWeight = this.sizes.stream().mapToInt(Size::weight).sum();
+        this.dateRatio = dateRatio;
+        this.thumbnailRatio = thumbnailRatio;
+        this.burstRatio = burstRatio;
+    }
+
+    /**
+     * Writes the corpus. The files are named IMG_00001.jpg, IMG_00002.jpg, ...; existing files with these names are replaced.
+     * @param directory the directory, which is created if it does not exist
+     * @param count the number of files
+     * @return the statistics of the written corpus
+     * @throws IOException if a file cannot be written
+     */
+    public Statistics generate(Path directory, int count) throws IOException {
+        if(count < 0) {
+            throw new IllegalArgumentException("The number of files must not be negative");
+        }
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        Random random = new Random(seed);
+        Map<Size, byte[]> images = new HashMap<>();
+        Map<Size, byte[]> thumbnails = new HashMap<>();
+        ExifRewriter rewriter = new ExifRewriter();
+        LocalDateTime date = FIRST_DATE;
+        int withDate = 0;
+        int withThumbnail = 0;
+        int bursts = 0;
+        long bytes = 0;
+        for (int i = 1; i <= count; i++) {
+            // every value is drawn for every file, so changing one ratio does not change the other choices
+            Size size = pickSize(random.nextInt(totalWeight));
+            boolean hasDate = random.nextDouble() < dateRatio;
+            boolean hasThumbnail = random.nextDouble() < thumbnailRatio;
+            boolean burst = random.nextDouble() < burstRatio && i > 1;
+            int gap = 1 + random.nextInt(MAX_GAP_SECONDS);
+            String model = MODELS[random.nextInt(MODELS.length)];
+            if(!burst) {
+                date = date.plusSeconds(gap);
+            }
+
+            if(!images.containsKey(size)) {
+                BufferedImage image = createImage(size, seed);
+                images.put(size, encode(image));
+                thumbnails.put(size, encode(scale(image)));
+            }
+            TiffOutputSet exif = new TiffOutputSet();
+            Path file = directory.resolve(String.format("IMG_%05d.jpg", i));
+            try {
+                exif.getOrCreateRootDirectory().add(TiffTagConstants.TIFF_TAG_MODEL, model);
+                if(hasDate) {
+                    exif.getOrCreateExifDirectory().add(ExifTagConstants.EXIF_TAG_DATE_TIME_ORIGINAL, EXIF_DATE_FORMAT.format(date));
+                }
+                if(hasThumbnail) {
+                    byte[] thumbnail = thumbnails.get(size);
+                    TiffOutputDirectory thumbnailDirectory = new TiffOutputDirectory(TiffDirectoryConstants.DIRECTORY_TYPE_DIR_1, exif.byteOrder);
+                    thumbnailDirectory.setJpegImageData(new JpegImageData(0, thumbnail.length, thumbnail));
+                    exif.addDirectory(thumbnailDirectory);
+                }
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+                    rewriter.updateExifMetadataLossless(images.get(size), out, exif);
+                }
+            } catch (ImageReadException | ImageWriteException e) {
+                throw new IOException(String.format("Writing the EXIF data of \"%s\" failed: %s", file.toAbsolutePath(), e.getMessage()), e);
+            }
+            Files.setLastModifiedTime(file, FileTime.from(date.atZone(ZoneId.systemDefault()).toInstant()));
+
+            bytes += Files.size(file);
+            withDate += hasDate ? 1 : 0;
+            withThumbnail += hasThumbnail ? 1 : 0;
+            bursts += burst ? 1 : 0;
+        }
+        return new Statistics(count, withDate, withThumbnail, bursts, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Returns the size for a random weight
+     * @param weight a random number between 0 (inclusive) and the total weight (exclusive)
+     * @return the size
+     */
+    private Size pickSize(int weight) {
+        for (Size size : sizes) {
+            weight -= size.weight();
+            if(weight < 0) {
+                return size;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    /**
+     * Creates the picture of a size: gradients with seeded noise, which compresses like a photo rather than like a flat image
+     * @param size the size
+     * @param seed the seed of the corpus
+     * @return the picture
+     */
+    private static BufferedImage createImage(Size size, long seed) {
+        Random random = new Random(seed ^ ((long) size.width() << 32 | size.height()));
+        BufferedImage image = new BufferedImage(size.width(), size.height(), BufferedImage.TYPE_3BYTE_BGR);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int offset = 0;
+        for (int y = 0; y < size.height(); y++) {
+            int green = y * 223 / size.height();
+            for (int x = 0; x < size.width(); x++) {
+                int noise = random.nextInt(32);
+                pixels[offset++] = (byte) (128 + noise);
+                pixels[offset++] = (byte) (green + noise);
+                pixels[offset++] = (byte) (x * 223 / size.width() + noise);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Scales the picture to the size of an embedded thumbnail
+     * @param image the picture
+     * @return the thumbnail
+     */
+    private static BufferedImage scale(BufferedImage image) {
+        BufferedImage thumbnail = new BufferedImage(THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Encodes a picture as JPG
+     * @param image the picture
+     * @return the JPG bytes
+     * @throws IOException if encoding fails
+     */
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if(!ImageIO.write(image, "jpg", out)) {
+            throw new IOException("No JPG encoder available");
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * An image size and how often it occurs, relative to the other sizes
+     * @param width the width (pixels)
+     * @param height the height (pixels)
+     * @param weight the weight
+     */
+    public record Size(int width, int height, int weight) {
+
+        public Size {
+            if(width < 1 || height < 1 || weight < 1) {
+                throw new IllegalArgumentException("The dimensions and the weight of a size must be positive");
+            }
+        }
+
+        /**
+         * Parses a size
+         * @param size e.g. "4000x3000:70", or "4000x3000" for a weight of 1
+         * @return the size
+         * @throws IllegalArgumentException if the size cannot be parsed
+         */
+        public static Size parse(String size) {
+            try {
+                int separator = size.indexOf('x');
+                int weightSeparator = size.indexOf(':');
+                int end = weightSeparator < 0 ? size.length() : weightSeparator;
+                if(separator < 0 || separator > end) {
+                    throw new IllegalArgumentException(String.format("Invalid size \"%s\", expected WIDTHxHEIGHT[:WEIGHT]", size));
+                }
+                return new Size(Integer.parseInt(size.substring(0, separator)), Integer.parseInt(size.substring(separator + 1, end)),
+                        weightSeparator < 0 ? 1 : Integer.parseInt(size.substring(weightSeparator + 1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(String.format("Invalid size \"%s\", expected WIDTHxHEIGHT[:WEIGHT]", size), e);
+            }
+        }
+
+        /**
+         * Parses a comma separated list of sizes
+         * @param sizes e.g. "4000x3000:70,1920x1080:25"
+         * @return the sizes
+         * @throws IllegalArgumentException if a size cannot be parsed
+         */
+        public static List<Size> parseList(String sizes) {
+            List<Size> list = new ArrayList<>();
+            for (String size : sizes.split(",")) {
+                list.add(parse(size.trim()));
+            }
+            return list;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%dx%d:%d", width, height, weight);
+        }
+    }
+
+    /**
+     * The statistics of a written corpus
+     * @param files the number of files
+     * @param withDate the number of files with an EXIF date
+     * @param withThumbnail the number of files with an embedded thumbnail
+     * @param bursts the number of files taken in the same second as the previous file
+     * @param bytes the total size of the files
+     * @param nanos the time taken to write the corpus
+     */
+    public record Statistics(int files, int withDate, int withThumbnail, int bursts, long bytes, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("Generated %d files (%d with date, %d with thumbnail, %d in bursts, %.1f MB) in %.2f s",
+                    files, withDate, withThumbnail, bursts, bytes / (1024.0 * 1024.0), nanos / 1e9);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This class enumerates the JPG files of a directory and, optionally, of all its subdirectories.
+ * Subdirectories are listed in parallel by a fork/join pool, whose work stealing keeps all threads busy
+ * in trees with unevenly sized subdirectories. Symbolic links to directories are not followed.
+ * The files are handed to the caller while walking, so loading can start before the whole tree has been listed.
+ * They are handed over in the order of their paths, independent of the order in which the listings finish,
+ * so numbering the files gives the same result in every run.
+ * <p>
+ * Entries with a JPG extension are reported without reading their attributes, which would cost a round trip per entry
+ * on network file systems; the loader reads the file anyway and reports entries which are not files as errors.
+ */
+public class DirectoryWalker {
+
+    /**
+     * The system property used to configure the number of threads walking subdirectories
+     */
+    public static final String THREADS_PROPERTY = "jpgrenamer.walker.threads";
+
+    /**
+     * The number of found files which may wait for the consumer of a {@link FileStream}
+     */
+    private static final int STREAM_CAPACITY = 1024;
+
+    private final int threads;
+
+    /**
+     * Creates a new walker using the number of threads configured by the system property
+     * {@value #THREADS_PROPERTY}, or one thread per available processor.
+     */
+    public DirectoryWalker() {
+        this(Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a new walker
+     * @param threads the number of threads walking subdirectories
+     */
+    public DirectoryWalker(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Walks the directory. Blocks until all files have been found.
+     * @param directory the directory
+     * @param recursive determines, whether the subdirectories are walked
+     * @param onFile called for every JPG file on the calling thread, in the order of the paths
+     * @param onError called for every directory which cannot be listed, concurrently from several threads if the walk is recursive
+     */
+    public void walk(Path directory, boolean recursive, Consumer<Path> onFile, BiConsumer<Path, IOException> onError) {
+        WalkTask root = new WalkTask(directory, recursive, onError);
+        if(!recursive) {
+            root.compute();
+            root.handOver(onFile);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            // lists the directory and forks the listing of the subdirectories, which continue while the files are handed over
+            pool.invoke(root);
+            root.handOver(onFile);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts walking the directory in the background and returns the files while they are found.
+     * Handing over the files pauses while the consumer falls behind; the listings of the directories are kept
+     * until their files have been handed over.
+     * @param directory the directory
+     * @param recursive determines, whether the subdirectories are walked
+     * @param onError called for every directory which cannot be listed, from the walking threads
+     * @return the found files, which have to be closed if they are not iterated completely
+     */
+    public FileStream stream(Path directory, boolean recursive, BiConsumer<Path, IOException> onError) {
+        FileStream stream = new FileStream();
+        Thread thread = new Thread(() -> {
+            try {
+                walk(directory, recursive, stream::put, onError);
+            } catch (CancellationException e) {
+                // the stream has been closed
+            } finally {
+                stream.finish();
+            }
+        }, "directory-walker");
+        thread.setDaemon(true);
+        thread.start();
+        return stream;
+    }
+
+    /**
+     * Lists a directory and its subdirectories in parallel subtasks. The found entries are handed over afterwards,
+     * in the order of their paths.
+     */
+    private static class WalkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Path directory;
+
+        private final boolean recursive;
+
+        private final transient BiConsumer<Path, IOException> onError;
+
+        /**
+         * The JPG files and the subdirectory tasks of the directory, sorted by path
+         */
+        private final transient List<Entry> entries = new ArrayList<>();
+
+        WalkTask(Path directory, boolean recursive, BiConsumer<Path, IOException> onError) {
+            this.directory = directory;
+            this.recursive = recursive;
+            this.onError = onError;
+        }
+
+        @Override
+        protected void compute() {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if(JpgMetadata.hasJpgExtension(name)) {
+                        entries.add(new Entry(name, path, null));
+                    } else if(recursive && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        WalkTask subdirectory = new WalkTask(path, true, onError);
+                        // subdirectories are listed while the rest of this directory is listed and handed over
+                        subdirectory.fork();
+                        // the separator sorts the subdirectory like the paths of its files, e.g. "a/b.jpg" before "a/b/c.jpg"
+                        entries.add(new Entry(name + "/", null, subdirectory));
+                    }
+                }
+            } catch (IOException e) {
+                onError.accept(directory, e);
+            }
+            entries.sort(Comparator.comparing(Entry::key));
+        }
+
+        /**
+         * Hands the files of the directory and its subdirectories to the consumer, waiting for the listing of every subdirectory
+         * @param onFile called for every JPG file, in the order of the paths
+         */
+        void handOver(Consumer<Path> onFile) {
+            for (Entry entry : entries) {
+                if(entry.file() != null) {
+                    onFile.accept(entry.file());
+                } else {
+                    entry.subdirectory().join();
+                    entry.subdirectory().handOver(onFile);
+                }
+            }
+            // the listing is not needed anymore, while the parent directory is handed over
+            entries.clear();
+        }
+
+        /**
+         * An entry of a listed directory
+         * @param key the name, followed by a separator for a subdirectory
+         * @param file the JPG file, or null
+         * @param subdirectory the task listing the subdirectory, or null
+         */
+        private record Entry(String key, Path file, WalkTask subdirectory) {
+        }
+    }
+
+    /**
+     * The files found by a walk running in the background. The files can be iterated once.
+     */
+    public static class FileStream implements Iterable<File>, Closeable {
+
+        /**
+         * Marks the end of the walk in the queue
+         */
+        private static final Path END = Path.of("");
+
+        private final BlockingQueue<Path> queue = new ArrayBlockingQueue<>(STREAM_CAPACITY);
+
+        private volatile boolean closed;
+
+        private FileStream() {
+        }
+
+        /**
+         * Adds a found file, blocks while the queue is full. Called from the walking threads.
+         * @param path the file
+         * @throws CancellationException if the stream has been closed
+         */
+        private void put(Path path) {
+            try {
+                if(!closed) {
+                    queue.put(path);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if(closed) {
+                throw new CancellationException();
+            }
+        }
+
+        private void finish() {
+            while (!closed) {
+                try {
+                    queue.put(END);
+                    return;
+                } catch (InterruptedException e) {
+                    // only the end marker is missing, the walk has already finished
+                }
+            }
+        }
+
+        /**
+         * Returns the iterator over the found files. Iterating blocks until the next file has been found;
+         * if the iterating thread is interrupted, the iteration ends and the thread stays interrupted.
+         * @return the iterator
+         */
+        @Override
+        public Iterator<File> iterator() {
+            return new Iterator<>() {
+
+                private Path next;
+
+                @Override
+                public boolean hasNext() {
+                    if(next == null && !closed) {
+                        try {
+                            next = queue.take();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return false;
+                        }
+                    }
+                    return next != null && next != END;
+                }
+
+                @Override
+                public File next() {
+                    if(!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    File file = next.toFile();
+                    next = null;
+                    return file;
+                }
+            };
+        }
+
+        /**
+         * Stops the walk. Files which have already been found are discarded.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            // wakes up the walking threads waiting for space, they stop at their next file
+            queue.clear();
+        }
+    }
+}
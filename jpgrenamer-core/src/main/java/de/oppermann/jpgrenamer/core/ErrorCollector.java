@@ -0,0 +1,157 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class collects the files which could not be processed, so they can be reported together
+ * instead of interrupting the user once per file. Recording a failure only stores the path,
+ * the phase, the name of the exception class and the message; the exception itself is not kept.
+ * The methods are thread-safe.
+ */
+public class ErrorCollector {
+
+    /**
+     * The maximum number of stored failures. Further failures are only counted.
+     */
+    private static final int MAX_FAILURES = 100_000;
+
+    /**
+     * The phase in which a file failed
+     */
+    public enum Phase {
+        LISTING, LOADING, RENAMING
+    }
+
+    /**
+     * A file which could not be processed
+     * @param path the path of the file or of the directory which could not be listed
+     * @param phase the phase in which it failed
+     * @param exceptionClass the name of the exception class
+     * @param message the message of the exception, never null
+     */
+    public record Failure(Path path, Phase phase, String exceptionClass, String message) {
+    }
+
+    private final List<Failure> failures = new ArrayList<>();
+
+    private final int[] counts = new int[Phase.values().length];
+
+    /**
+     * Records a failure
+     * @param path the path of the file or of the directory which could not be listed
+     * @param phase the phase in which it failed
+     * @param e the cause
+     */
+    public synchronized void record(Path path, Phase phase, Exception e) {
+        counts[phase.ordinal()]++;
+        if(failures.size() < MAX_FAILURES) {
+            failures.add(new Failure(path, phase, e.getClass().getName(), e.getMessage() != null ? e.getMessage() : ""));
+        }
+    }
+
+    /**
+     * Returns the number of recorded failures, including the failures which have only been counted
+     * @return the number of failures
+     */
+    public synchronized int getCount() {
+        int count = 0;
+        for (int phaseCount : counts) {
+            count += phaseCount;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of recorded failures in a phase
+     * @param phase the phase
+     * @return the number of failures
+     */
+    public synchronized int getCount(Phase phase) {
+        return counts[phase.ordinal()];
+    }
+
+    /**
+     * Returns the stored failures in the order they have been recorded
+     * @return a copy of the failures
+     */
+    public synchronized List<Failure> getFailures() {
+        return List.copyOf(failures);
+    }
+
+    /**
+     * Removes all failures
+     */
+    public synchronized void clear() {
+        failures.clear();
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Writes the stored failures as CSV with a header line. Fields are quoted if necessary.
+     * @param writer the writer, which is not closed
+     * @throws IOException if writing fails
+     */
+    public void exportCsv(Writer writer) throws IOException {
+        writer.write("phase,path,exception,message\n");
+        for (Failure failure : getFailures()) {
+            writer.write(failure.phase().name());
+            writer.write(',');
+            writer.write(quote(failure.path().toString()));
+            writer.write(',');
+            writer.write(quote(failure.exceptionClass()));
+            writer.write(',');
+            writer.write(quote(failure.message()));
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * Writes the stored failures as a UTF-8 CSV file
+     * @param file the file, which is replaced if it exists
+     * @throws IOException if writing fails
+     */
+    public void exportCsv(Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            exportCsv(writer);
+        }
+    }
+
+    /**
+     * Quotes a CSV field, if it contains a separator, a quote or a line break
+     * @param field the field
+     * @return the field as it is written to the CSV file
+     */
+    private static String quote(String field) {
+        if(field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Returns a summary of the failures per phase
+     * @return e.g. "3 errors: 2 while loading, 1 while renaming"
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(getCount()).append(getCount() == 1 ? " error" : " errors");
+        String separator = ": ";
+        for (Phase phase : Phase.values()) {
+            if(counts[phase.ordinal()] > 0) {
+                summary.append(separator).append(counts[phase.ordinal()]).append(" while ").append(phase.name().toLowerCase(Locale.ROOT));
+                separator = ", ";
+            }
+        }
+        return summary.toString();
+    }
+}
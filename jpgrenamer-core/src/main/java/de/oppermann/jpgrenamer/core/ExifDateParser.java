@@ -0,0 +1,77 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.time.LocalDateTime;
+
+/**
+ * This class parses the EXIF date format "yyyy:MM:dd HH:mm:ss" directly from the ASCII bytes of a tag.
+ * No Strings or formatters are created and malformed dates are reported by returning null instead of throwing,
+ * so the parser can be called for many files from many threads.
+ */
+public final class ExifDateParser {
+
+    /**
+     * The length of a date without the terminating NUL
+     */
+    private static final int LENGTH = 19;
+
+    private ExifDateParser() {
+    }
+
+    /**
+     * Parses the date. The date separators may be ':' or '-', the separator between date and time may be ' ' or 'T'.
+     * Dates which are unknown (e.g. "0000:00:00 00:00:00" or blank) or out of range are treated as malformed.
+     * @param value the ASCII bytes of the tag, allowed to be null
+     * @return the date, or null if the bytes do not contain a valid date
+     */
+    public static LocalDateTime parse(byte[] value) {
+        if(value == null || value.length < LENGTH) {
+            return null;
+        }
+        if(!isDateSeparator(value[4]) || !isDateSeparator(value[7])
+                || (value[10] != ' ' && value[10] != 'T') || value[13] != ':' || value[16] != ':') {
+            return null;
+        }
+        int year = digits(value, 0, 4);
+        int month = digits(value, 5, 2);
+        int day = digits(value, 8, 2);
+        int hour = digits(value, 11, 2);
+        int minute = digits(value, 14, 2);
+        int second = digits(value, 17, 2);
+        if(year < 1 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second);
+    }
+
+    private static boolean isDateSeparator(byte b) {
+        return b == ':' || b == '-';
+    }
+
+    /**
+     * Parses a fixed number of decimal digits
+     * @param value the bytes
+     * @param offset the position of the first digit
+     * @param count the number of digits
+     * @return the number, or -1 if a byte is not a digit
+     */
+    private static int digits(byte[] value, int offset, int count) {
+        int result = 0;
+        for (int i = offset; i < offset + count; i++) {
+            int digit = value[i] - '0';
+            if(digit < 0 || digit > 9) {
+                return -1;
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+}
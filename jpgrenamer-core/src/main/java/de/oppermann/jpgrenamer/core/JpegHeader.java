@@ -0,0 +1,359 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.common.bytesource.ByteSourceArray;
+import org.apache.commons.imaging.common.ImageMetadata;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.JpegImageData;
+import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffImageParser;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+
+/**
+ * This class contains the information read from the header segments of a JPG file.
+ * The header is read in a single pass over the marker segments (SOI, APPn, SOFn, ...)
+ * which stops at the first SOS marker, so the entropy-coded image data is never read.
+ */
+public class JpegHeader {
+
+    //region constants
+    private static final int MARKER_PREFIX = 0xFF;
+
+    private static final int SOI = 0xD8;
+
+    private static final int EOI = 0xD9;
+
+    private static final int SOS = 0xDA;
+
+    private static final int APP1 = 0xE1;
+
+    private static final int TEM = 0x01;
+
+    private static final int RST0 = 0xD0;
+
+    private static final int RST7 = 0xD7;
+
+    private static final int SOF0 = 0xC0;
+
+    private static final int SOF15 = 0xCF;
+
+    private static final int DHT = 0xC4;
+
+    private static final int JPG = 0xC8;
+
+    private static final int DAC = 0xCC;
+
+    private static final byte[] EXIF_IDENTIFIER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    //endregion
+
+    //region fields
+    private final JpegImageMetadata metadata;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * The position of the embedded EXIF thumbnail in the file, or -1
+     */
+    private final long thumbnailOffset;
+
+    private final int thumbnailLength;
+    //endregion
+
+    /**
+     * Creates a new JpegHeader
+     * @param metadata the EXIF metadata, allowed to be null
+     * @param width the width from the SOF segment, or -1
+     * @param height the height from the SOF segment, or -1
+     * @param thumbnailOffset the position of the embedded thumbnail in the file, or -1
+     * @param thumbnailLength the length of the embedded thumbnail, or 0
+     */
+    private JpegHeader(JpegImageMetadata metadata, int width, int height, long thumbnailOffset, int thumbnailLength) {
+        this.metadata = metadata;
+        this.width = width;
+        this.height = height;
+        this.thumbnailOffset = thumbnailOffset;
+        this.thumbnailLength = thumbnailLength;
+    }
+
+    //region getters
+
+    /**
+     * Returns the EXIF metadata of the image
+     * @return the metadata, or null, if the file does not contain an EXIF segment
+     */
+    public JpegImageMetadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the width of the image as stored in the frame header
+     * @return the width (pixels), or -1 if no frame header was found
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image as stored in the frame header
+     * @return the height (pixels), or -1 if no frame header was found
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the position of the thumbnail embedded in the EXIF data, so it can be read from the file when it is needed
+     * @return the position in the file, or -1, if no JPG thumbnail is embedded
+     */
+    public long getThumbnailOffset() {
+        return thumbnailOffset;
+    }
+
+    /**
+     * Returns the length of the thumbnail embedded in the EXIF data
+     * @return the length (bytes), or 0, if no JPG thumbnail is embedded
+     */
+    public int getThumbnailLength() {
+        return thumbnailLength;
+    }
+
+    /**
+     * Returns the encoded bytes of the thumbnail embedded in the EXIF data
+     * @return the thumbnail bytes, or null, if no thumbnail is embedded
+     */
+    public byte[] getThumbnailData() {
+        if(metadata == null) {
+            return null;
+        }
+        try {
+            return metadata.getEXIFThumbnailData();
+        } catch (ImageReadException | IOException e) {
+            return null;
+        }
+    }
+
+    //endregion
+
+    //region reading
+
+    /**
+     * Reads the header of the given JPG file
+     * @param file the JPG file
+     * @return the header information
+     * @throws IOException if the file cannot be read or accessed
+     * @throws ImageReadException if the file is not a JPG file
+     */
+    public static JpegHeader read(File file) throws IOException, ImageReadException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads the header from the given stream. The stream is consumed up to the first SOS marker.
+     * The position of the embedded thumbnail is relative to the start of the stream.
+     * @param source the stream positioned at the start of the JPG data
+     * @return the header information
+     * @throws IOException if the stream cannot be read
+     * @throws ImageReadException if the data is not JPG data
+     */
+    public static JpegHeader read(InputStream source) throws IOException, ImageReadException {
+        PositionInputStream in = new PositionInputStream(source);
+        if(in.read() != MARKER_PREFIX || in.read() != SOI) {
+            throw new ImageReadException("Not a JPG file: missing SOI marker");
+        }
+
+        JpegImageMetadata metadata = null;
+        int width = -1;
+        int height = -1;
+        long thumbnailOffset = -1;
+        int thumbnailLength = 0;
+
+        while (true) {
+            int marker = readMarker(in);
+            if(marker == SOS || marker == EOI) {
+                break;
+            }
+            if(marker == TEM || (marker >= RST0 && marker <= RST7)) {
+                // standalone markers without a segment length
+                continue;
+            }
+            int length = readUnsignedShort(in) - 2;
+            if(length < 0) {
+                throw new ImageReadException(String.format("Invalid segment length for marker 0x%02X", marker));
+            }
+
+            if(marker == APP1 && metadata == null) {
+                long segmentOffset = in.position;
+                byte[] segment = in.readNBytes(length);
+                if(segment.length < length) {
+                    throw new EOFException("Unexpected end of APP1 segment");
+                }
+                metadata = readExif(segment);
+                JpegImageData thumbnail = findThumbnail(metadata, segment);
+                if(thumbnail != null) {
+                    thumbnailOffset = segmentOffset + EXIF_IDENTIFIER.length + thumbnail.offset;
+                    thumbnailLength = thumbnail.length;
+                }
+            } else if(isStartOfFrame(marker) && width < 0) {
+                if(length < 5) {
+                    throw new ImageReadException("Invalid SOF segment");
+                }
+                in.skipNBytes(1); // sample precision
+                height = readUnsignedShort(in);
+                width = readUnsignedShort(in);
+                in.skipNBytes(length - 5);
+            } else {
+                in.skipNBytes(length);
+            }
+        }
+        return new JpegHeader(metadata, width, height, thumbnailOffset, thumbnailLength);
+    }
+
+    /**
+     * Reads the next marker from the stream, skipping fill bytes
+     * @param in the stream
+     * @return the marker code (without the 0xFF prefix)
+     * @throws IOException if the stream cannot be read
+     * @throws ImageReadException if the stream is not positioned at a marker
+     */
+    private static int readMarker(InputStream in) throws IOException, ImageReadException {
+        int b = in.read();
+        if(b != MARKER_PREFIX) {
+            if(b < 0) {
+                throw new EOFException("Unexpected end of JPG header");
+            }
+            throw new ImageReadException(String.format("Expected marker, found 0x%02X", b));
+        }
+        do {
+            b = in.read();
+        } while (b == MARKER_PREFIX);
+        if(b < 0) {
+            throw new EOFException("Unexpected end of JPG header");
+        }
+        return b;
+    }
+
+    /**
+     * Reads a big endian unsigned short from the stream
+     * @param in the stream
+     * @return the value
+     * @throws IOException if the stream cannot be read
+     */
+    private static int readUnsignedShort(InputStream in) throws IOException {
+        int high = in.read();
+        int low = in.read();
+        if((high | low) < 0) {
+            throw new EOFException("Unexpected end of JPG header");
+        }
+        return (high << 8) | low;
+    }
+
+    /**
+     * Returns whether the marker is a start of frame marker carrying the image dimensions
+     * @param marker the marker code
+     * @return true, if the marker is SOF0 - SOF15
+     */
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= SOF0 && marker <= SOF15 && marker != DHT && marker != JPG && marker != DAC;
+    }
+
+    /**
+     * Parses the EXIF data of an APP1 segment
+     * @param segment the content of the APP1 segment
+     * @return the metadata, or null, if the segment does not contain EXIF data
+     */
+    private static JpegImageMetadata readExif(byte[] segment) {
+        if(segment.length < EXIF_IDENTIFIER.length) {
+            return null;
+        }
+        for (int i = 0; i < EXIF_IDENTIFIER.length; i++) {
+            if(segment[i] != EXIF_IDENTIFIER[i]) {
+                return null;
+            }
+        }
+        byte[] tiff = new byte[segment.length - EXIF_IDENTIFIER.length];
+        System.arraycopy(segment, EXIF_IDENTIFIER.length, tiff, 0, tiff.length);
+        try {
+            TiffImageMetadata exif = (TiffImageMetadata) new TiffImageParser().getMetadata(new ByteSourceArray(tiff), new HashMap<>());
+            return new JpegImageMetadata(null, exif);
+        } catch (ImageReadException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Finds the JPG thumbnail embedded in the EXIF data, like {@link JpegImageMetadata#getEXIFThumbnailData()}, but without copying it
+     * @param metadata the metadata parsed from the segment, allowed to be null
+     * @param segment the content of the APP1 segment
+     * @return the position of the thumbnail in the TIFF data, or null, if no JPG thumbnail is embedded
+     */
+    private static JpegImageData findThumbnail(JpegImageMetadata metadata, byte[] segment) {
+        if(metadata == null || metadata.getExif() == null) {
+            return null;
+        }
+        for (ImageMetadata.ImageMetadataItem item : metadata.getExif().getDirectories()) {
+            JpegImageData data = ((TiffImageMetadata.Directory) item).getJpegImageData();
+            if(data == null) {
+                continue;
+            }
+            long start = EXIF_IDENTIFIER.length + data.offset;
+            if(data.length >= 2 && start >= 0 && start + data.length <= segment.length
+                    && Byte.toUnsignedInt(segment[(int) start]) == MARKER_PREFIX && Byte.toUnsignedInt(segment[(int) start + 1]) == SOI) {
+                return data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Counts the bytes consumed from the stream, so the position of the thumbnail in the file is known
+     */
+    private static class PositionInputStream extends FilterInputStream {
+
+        private long position;
+
+        PositionInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) {
+                position++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if(count > 0) {
+                position += count;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            position += count;
+            return count;
+        }
+    }
+
+    //endregion
+}
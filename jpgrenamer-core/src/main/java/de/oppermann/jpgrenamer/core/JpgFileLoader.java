@@ -0,0 +1,229 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This class loads the metadata of JPG files in parallel using a bounded pool of worker threads.
+ * The loaded metadata is handed to the caller in the order of the input,
+ * independent of the order in which the workers finish. The input is consumed while loading,
+ * so it can be streamed, e.g. from a {@link DirectoryWalker}.
+ */
+public class JpgFileLoader {
+
+    /**
+     * The system property used to configure the number of worker threads
+     */
+    public static final String THREADS_PROPERTY = "jpgrenamer.loader.threads";
+
+    /**
+     * The number of files that may be in flight per worker thread.
+     * Limits the memory used by files that are loaded but not yet handed to the caller.
+     */
+    private static final int FILES_IN_FLIGHT_PER_THREAD = 4;
+
+    private final int threads;
+
+    /**
+     * Creates a new loader using the number of threads configured by the system property
+     * {@value #THREADS_PROPERTY}, or one thread per available processor.
+     */
+    public JpgFileLoader() {
+        this(Integer.getInteger(THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Creates a new loader
+     * @param threads the number of worker threads
+     */
+    public JpgFileLoader(int threads) {
+        if(threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the number of worker threads
+     * @return the number of worker threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Loads the given files. Blocks until all files have been loaded.
+     * @param files the files to load
+     * @param onLoaded called for every loaded file, in the order of the input
+     * @param onError called for every file that could not be loaded, in the order of the input
+     * @return the statistics of the load
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the workers or the input
+     */
+    public LoadStatistics load(Iterable<File> files, Consumer<JpgMetadata> onLoaded, BiConsumer<File, Exception> onError) throws InterruptedException {
+        return load(files, null, onLoaded, onError);
+    }
+
+    /**
+     * Loads the given files, using the metadata index for files which have not changed since they were indexed.
+     * Blocks until all files have been loaded.
+     * @param files the files to load
+     * @param index the metadata index of the directory, allowed to be null
+     * @param onLoaded called for every loaded file, in the order of the input
+     * @param onError called for every file that could not be loaded, in the order of the input
+     * @return the statistics of the load
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the workers or the input
+     */
+    public LoadStatistics load(Iterable<File> files, MetadataIndex index, Consumer<JpgMetadata> onLoaded, BiConsumer<File, Exception> onError) throws InterruptedException {
+        long start = System.nanoTime();
+        int loaded = 0;
+        int failed = 0;
+        int window = threads * FILES_IN_FLIGHT_PER_THREAD;
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new WorkerThreadFactory());
+        try {
+            Deque<PendingFile> pending = new ArrayDeque<>(window);
+            Iterator<File> iterator = files.iterator();
+            while (true) {
+                // the input may be streamed while it is loaded and block until the next file is found,
+                // so a finished file is handed over before asking for more input
+                if(pending.size() < window && (pending.isEmpty() || !pending.peek().future().isDone()) && iterator.hasNext()) {
+                    File file = iterator.next();
+                    pending.add(new PendingFile(file, executor.submit(() -> index != null ? index.load(file) : JpgMetadata.read(file))));
+                    continue;
+                }
+                PendingFile next = pending.poll();
+                if(next == null) {
+                    break;
+                }
+                try {
+                    onLoaded.accept(next.future().get());
+                    loaded++;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    onError.accept(next.file(), cause instanceof Exception ? (Exception) cause : e);
+                    failed++;
+                }
+            }
+            // a streamed input ends early if the calling thread is interrupted
+            if(Thread.interrupted()) {
+                throw new InterruptedException("Loading the files has been interrupted");
+            }
+        } finally {
+            // interrupts the workers, so a cancelled load does not keep reading files
+            executor.shutdownNow();
+        }
+        return new LoadStatistics(loaded, failed, System.nanoTime() - start, threads);
+    }
+
+    /**
+     * A file whose loading has been submitted to the workers
+     * @param file the file
+     * @param future the future of the loaded metadata
+     */
+    private record PendingFile(File file, Future<JpgMetadata> future) {
+    }
+
+    /**
+     * Creates named daemon threads, so pending loads do not keep the application alive
+     */
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+        private final int poolNumber = POOL_NUMBER.incrementAndGet();
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, String.format("jpg-loader-%d-%d", poolNumber, threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * This class contains the statistics of a load, which can be used to size the pool
+     * for the storage the files are loaded from.
+     */
+    public static class LoadStatistics {
+
+        private final int loaded;
+
+        private final int failed;
+
+        private final long elapsedNanos;
+
+        private final int threads;
+
+        /**
+         * Creates new statistics
+         * @param loaded the number of loaded files
+         * @param failed the number of files that could not be loaded
+         * @param elapsedNanos the duration of the load (nanoseconds)
+         * @param threads the number of worker threads
+         */
+        public LoadStatistics(int loaded, int failed, long elapsedNanos, int threads) {
+            this.loaded = loaded;
+            this.failed = failed;
+            this.elapsedNanos = elapsedNanos;
+            this.threads = threads;
+        }
+
+        /**
+         * Returns the number of loaded files
+         * @return the number of loaded files
+         */
+        public int getLoaded() {
+            return loaded;
+        }
+
+        /**
+         * Returns the number of files that could not be loaded
+         * @return the number of failed files
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Returns the duration of the load
+         * @return the duration (seconds)
+         */
+        public double getElapsedSeconds() {
+            return elapsedNanos / 1_000_000_000d;
+        }
+
+        /**
+         * Returns the throughput of the load, including failed files
+         * @return the throughput (files per second)
+         */
+        public double getFilesPerSecond() {
+            double seconds = getElapsedSeconds();
+            return seconds > 0 ? (loaded + failed) / seconds : 0;
+        }
+
+        /**
+         * Returns the number of worker threads
+         * @return the number of worker threads
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d files (%d failed) in %.2f s: %.1f files/s with %d threads",
+                    loaded, failed, getElapsedSeconds(), getFilesPerSecond(), threads);
+        }
+    }
+}
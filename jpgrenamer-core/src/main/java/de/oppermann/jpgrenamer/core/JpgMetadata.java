@@ -0,0 +1,366 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.formats.jpeg.JpegImageMetadata;
+import org.apache.commons.imaging.formats.tiff.TiffField;
+import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
+import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoAscii;
+import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+/**
+ * This class contains the metadata of a JPG image file which is needed for renaming it.
+ * It does not depend on JavaFX, so it can be used by the UI and by the command line ({@link JpgRenamerCli}).
+ * Instances are immutable and can be shared between threads.
+ */
+public class JpgMetadata {
+
+    /**
+     * The extensions of the files which are loaded, in lower case
+     */
+    private static final String[] FILE_EXTENSIONS = {".jpg", ".jpeg" };
+
+    //region fields
+    private final File file;
+
+    private final Date taken;
+
+    /**
+     * The date taken in the local time zone, used for formatting the new name
+     */
+    private final LocalDateTime takenDateTime;
+
+    /**
+     * The camera model, or an empty String
+     */
+    private final String model;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * The position of the thumbnail embedded in the EXIF data in the file, or -1.
+     * Only the position is kept, so the thumbnails of many files do not stay in memory.
+     */
+    private final long thumbnailOffset;
+
+    private final int thumbnailLength;
+    //endregion
+
+    /**
+     * Creates new metadata that has been loaded before (e.g. from a {@link MetadataIndex}), without reading the image file
+     * @param file the file in the filesystem
+     * @param taken the date the image was taken
+     * @param model the camera model, or an empty String
+     * @param width the width of the image (pixels), or -1
+     * @param height the height of the image (pixels), or -1
+     * @param thumbnailOffset the position of the embedded thumbnail in the file, or -1
+     * @param thumbnailLength the length of the embedded thumbnail, or 0
+     */
+    JpgMetadata(File file, Date taken, String model, int width, int height, long thumbnailOffset, int thumbnailLength) {
+        this.file = file;
+        this.taken = taken;
+        this.takenDateTime = LocalDateTime.ofInstant(taken.toInstant(), ZoneId.systemDefault());
+        this.model = model;
+        this.width = width;
+        this.height = height;
+        this.thumbnailOffset = thumbnailOffset;
+        this.thumbnailLength = thumbnailLength;
+    }
+
+    /**
+     * Reads the metadata of the image file. The header segments are read in a single pass;
+     * the values are taken either from the EXIF data or from the frame header.
+     * @param file the file in the filesystem
+     * @return the metadata
+     * @throws IOException if the file does not exist or cannot be opened
+     * @throws ImageReadException if the image cannot be loaded from the file
+     */
+    public static JpgMetadata read(File file) throws IOException, ImageReadException {
+        JpegHeader header = JpegHeader.read(file);
+        JpegImageMetadata metadata = header.getMetadata();
+        return new JpgMetadata(file, readDate(file, metadata), readModel(metadata),
+                readWidth(metadata, header), readHeight(metadata, header), header.getThumbnailOffset(), header.getThumbnailLength());
+    }
+
+    /**
+     * Returns whether the path denotes a regular file with a JPG extension
+     * @param path the path
+     * @return true, if the file is a JPG file
+     */
+    public static boolean isJpgFile(Path path) {
+        return hasJpgExtension(path.getFileName().toString()) && Files.isRegularFile(path);
+    }
+
+    /**
+     * Returns whether the file name has a JPG extension, ignoring case. The name is compared in place, without creating a lower case copy.
+     * @param name the file name
+     * @return true, if the name ends with a JPG extension
+     */
+    public static boolean hasJpgExtension(String name) {
+        for (String extension : FILE_EXTENSIONS) {
+            int start = name.length() - extension.length();
+            if(start >= 0 && name.regionMatches(true, start, extension, 0, extension.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //region getters
+
+    /**
+     * Returns the file the metadata was read from
+     * @return the file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the date the image was taken
+     * @return the date the image was taken
+     */
+    public Date getTaken() {
+        return taken;
+    }
+
+    /**
+     * Returns the date the image was taken in the local time zone
+     * @return the date the image was taken
+     */
+    public LocalDateTime getTakenDateTime() {
+        return takenDateTime;
+    }
+
+    /**
+     * Returns the camera model
+     * @return the camera model, or an empty String if it is unknown
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the width of the image
+     * @return the width (pixels), or -1 if unknown
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image
+     * @return the height (pixels), or -1 if unknown
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the position of the thumbnail embedded in the EXIF data
+     * @return the position in the file, or -1, if the file does not contain a thumbnail
+     */
+    public long getThumbnailOffset() {
+        return thumbnailOffset;
+    }
+
+    /**
+     * Returns the length of the thumbnail embedded in the EXIF data
+     * @return the length (bytes), or 0, if the file does not contain a thumbnail
+     */
+    public int getThumbnailLength() {
+        return thumbnailLength;
+    }
+
+    /**
+     * Reads the encoded thumbnail embedded in the EXIF data from the image file
+     * @param file the current path of the image file, which may have been renamed since the metadata was read
+     * @return the encoded thumbnail, or null, if the file does not contain a thumbnail
+     * @throws IOException if the file cannot be read
+     */
+    public byte[] readThumbnailData(File file) throws IOException {
+        if(thumbnailLength < 2) {
+            return null;
+        }
+        ByteBuffer thumbnail = ByteBuffer.allocate(thumbnailLength);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (thumbnail.hasRemaining()) {
+                if(channel.read(thumbnail, thumbnailOffset + thumbnail.position()) < 0) {
+                    return null;
+                }
+            }
+        }
+        byte[] data = thumbnail.array();
+        // the file may have been replaced since the metadata was read
+        return Byte.toUnsignedInt(data[0]) == 0xFF && Byte.toUnsignedInt(data[1]) == 0xD8 ? data : null;
+    }
+
+    //endregion
+
+    //region reading
+
+    /**
+     * Reads the date of the image. If no metadata is present or the metadata does not contain the date,
+     * the file modification date is used.
+     * @param file The image file
+     * @param metadata The image metadata, allowed to be null
+     * @return The creation date
+     * @throws IOException if the file cannot be accessed
+     */
+    private static Date readDate(File file, JpegImageMetadata metadata) throws IOException {
+        Date dateTaken = metadata != null? readDateFromTag(metadata) : null;
+        if(dateTaken == null) {
+            dateTaken = readFileDate(file);
+        }
+        return dateTaken;
+    }
+
+    /**
+     * Reads the date from the Jpeg metadata. If the "DateTimeOriginal" tag is present,
+     * it is used. Otherwise, the DateTime tag is used.
+     * @param metadata The image metadata
+     * @return The date parsed from the tag information
+     */
+    private static Date readDateFromTag(JpegImageMetadata metadata) {
+        Date dateTaken = readDateFromTag(metadata, new TagInfoAscii("DateTimeOriginal", 36867, 20, TiffDirectoryType.EXIF_DIRECTORY_EXIF_IFD));
+        if(dateTaken == null) {
+            dateTaken = readDateFromTag(metadata, TiffTagConstants.TIFF_TAG_DATE_TIME);
+        }
+        return dateTaken;
+    }
+
+    /**
+     * Reads the date from the specified tag of the given metadata
+     * @param metadata The image metadata
+     * @param tag The tag to read the date from
+     * @return The date, or null, if no date can be read from the tag
+     */
+    private static Date readDateFromTag(JpegImageMetadata metadata, TagInfo tag) {
+        //try reading the original date tag
+        TiffField field = metadata.findEXIFValue(tag);
+        if(field == null) {
+            return null;
+        }
+        LocalDateTime dateTaken = ExifDateParser.parse(field.getByteArrayValue());
+        return dateTaken != null ? Date.from(dateTaken.atZone(ZoneId.systemDefault()).toInstant()) : null;
+    }
+
+    /**
+     * Reads the camera model from the Jpeg metadata
+     * @param metadata The image metadata, allowed to be null
+     * @return the camera model, or an empty String if the metadata does not contain it
+     */
+    private static String readModel(JpegImageMetadata metadata) {
+        if(metadata == null) {
+            return "";
+        }
+        try {
+            TiffField field = metadata.findEXIFValue(TiffTagConstants.TIFF_TAG_MODEL);
+            return field != null ? field.getStringValue().trim() : "";
+        } catch (ImageReadException e) {
+            return "";
+        }
+    }
+
+    /**
+     * Reads the date from the file attributes. This method is used as a fallback if no metadata
+     * can be read from the file. The modification date is used instead of the creation date, because copying a file
+     * keeps its modification date but sets a new creation date on most file systems.
+     * @param file The image file
+     * @return The file modification date
+     * @throws IOException if the file cannot be accessed
+     */
+    private static Date readFileDate(File file) throws IOException {
+        var fileAttributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        FileTime time = fileAttributes.lastModifiedTime();
+        return new Date(time.toMillis());
+    }
+
+    /**
+     * Reads the height of the image. If no metadata is available, the frame header is used.
+     * @param metadata The metadata of the image
+     * @param header The image header
+     * @return The height of the image (px), or -1 if no information is available
+     */
+    private static int readHeight(JpegImageMetadata metadata, JpegHeader header) {
+        int height = metadata != null? readHeight(metadata): -1;
+        if(height == -1) {
+            height = header.getHeight();
+        }
+        return height;
+    }
+
+    /**
+     * Reads the height of the image from the metadata
+     * @param metadata The image metadata
+     * @return The height (pixels)
+     */
+    private static int readHeight(JpegImageMetadata metadata) {
+        try {
+            TiffField field = metadata.findEXIFValue(TiffTagConstants.TIFF_TAG_IMAGE_LENGTH);
+            if(field != null) {
+                return field.getIntValue();
+            }
+            field = metadata.findEXIFValue(new TagInfoShort("ExifImageLength", 40963, TiffDirectoryType.EXIF_DIRECTORY_EXIF_IFD));
+            if(field != null) {
+                return field.getIntValue();
+            }
+            return -1;
+        } catch (ImageReadException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the width of the image. If no metadata is available, the frame header is used.
+     * @param metadata The metadata of the image
+     * @param header The image header
+     * @return The width of the image (px), or -1 if no information is available
+     */
+    private static int readWidth(JpegImageMetadata metadata, JpegHeader header) {
+        int width = metadata != null? readWidth(metadata): -1;
+        if(width == -1) {
+            width = header.getWidth();
+        }
+        return width;
+    }
+
+    /**
+     * Reads the width of the image from the metadata
+     * @param metadata The image metadata
+     * @return The width (pixels)
+     */
+    private static int readWidth(JpegImageMetadata metadata) {
+        try {
+            TiffField field = metadata.findEXIFValue(TiffTagConstants.TIFF_TAG_IMAGE_WIDTH);
+            if(field != null) {
+                return field.getIntValue();
+            }
+            field = metadata.findEXIFValue(new TagInfoShort("ExifImageWidth", 40962, TiffDirectoryType.EXIF_DIRECTORY_EXIF_IFD));
+            if(field != null) {
+                return field.getIntValue();
+            }
+            return -1;
+        } catch (ImageReadException e) {
+            return -1;
+        }
+    }
+
+    //endregion
+}
@@ -0,0 +1,437 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * Command line entry point, which scans and renames the JPG files of a directory without starting the JavaFX UI.
+ * Only classes which do not depend on JavaFX are used, so the CLI starts quickly and runs on machines without a display.
+ * Results are streamed to stdout, one line per file, errors are written to stderr.
+ * <p>
+ * Commands:
+ * <ul>
+ *     <li>{@code scan <directory>}: prints the metadata of every file</li>
+ *     <li>{@code plan <directory>}: prints the current and the suggested name of every file</li>
+ *     <li>{@code dry-run <directory>}: prints the moves and conflicts of renaming the files, without renaming them</li>
+ *     <li>{@code apply <directory>}: renames the files, journaled like renames in the UI</li>
+ *     <li>{@code watch <directory>}: renames the files arriving in the directory until the process is stopped</li>
+ *     <li>{@code recover}: completes or rolls back a rename batch that has been interrupted</li>
+ *     <li>{@code generate <directory>}: writes a synthetic corpus of JPG files for benchmarks and scale tests</li>
+ * </ul>
+ */
+public class JpgRenamerCli {
+
+    private static final int EXIT_OK = 0;
+
+    private static final int EXIT_ERRORS = 1;
+
+    private static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = """
+            Usage: JpgRenamerCli <command> [options]
+              scan <directory>       print the metadata of the JPG files
+              plan <directory>       print the suggested name of every file
+              dry-run <directory>    print the renames without executing them
+              apply <directory>      rename the files
+              watch <directory>      rename arriving files until stopped, printing lag metrics to stderr
+              recover                complete an interrupted rename batch
+              generate <directory>   write a reproducible synthetic corpus of JPG files
+            Options:
+              --template <template>  the template of the new names, default: %s
+              --fix-conflicts        append an index to names which already exist instead of skipping the file
+              --no-index             do not use the metadata index of the directory
+              --recursive            include the files in subdirectories (not for watch)
+              --rollback             roll back the interrupted batch instead of completing it (recover only)
+              --count <n>            the number of generated files, default: %d (generate only)
+              --seed <seed>          the seed of the generated corpus, default: %d (generate only)
+              --sizes <sizes>        the generated sizes and weights, default: %s (generate only)
+            """;
+
+    private static final int DEFAULT_CORPUS_COUNT = 1000;
+
+    private static final long DEFAULT_CORPUS_SEED = 1;
+
+    private final PrintStream out;
+
+    private final PrintStream err;
+
+    private RenameTemplate template = RenameTemplate.DEFAULT;
+
+    private boolean resolveConflicts;
+
+    private boolean useIndex = true;
+
+    private boolean recursive;
+
+    /**
+     * The directory given on the command line, or null
+     */
+    private Path directory;
+
+    private boolean rollBack;
+
+    private int corpusCount = DEFAULT_CORPUS_COUNT;
+
+    private long corpusSeed = DEFAULT_CORPUS_SEED;
+
+    private List<CorpusGenerator.Size> corpusSizes = CorpusGenerator.DEFAULT_SIZES;
+
+    /**
+     * The number of files which could not be loaded or renamed
+     */
+    private int errors;
+
+    /**
+     * Creates a new CLI
+     * @param out the stream the results are written to
+     * @param err the stream the errors are written to
+     */
+    public JpgRenamerCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        // stdout is buffered and flushed at the end, so streaming many lines does not flush per line
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false, StandardCharsets.UTF_8);
+        int exitCode;
+        try {
+            exitCode = new JpgRenamerCli(out, System.err).run(args);
+        } finally {
+            out.flush();
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Runs the command given by the arguments
+     * @param args the command line arguments
+     * @return the exit code: 0 on success, 1 if files could not be loaded or renamed, 2 if the arguments are invalid
+     */
+    public int run(String[] args) {
+        List<String> operands = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--template" -> {
+                    if(++i == args.length) {
+                        return usage("The option --template requires a value.");
+                    }
+                    try {
+                        this.template = RenameTemplate.compile(args[i]);
+                    } catch (IllegalArgumentException e) {
+                        return usage(String.format("Invalid template \"%s\": %s", args[i], e.getMessage()));
+                    }
+                }
+                case "--fix-conflicts" -> this.resolveConflicts = true;
+                case "--no-index" -> this.useIndex = false;
+                case "--recursive" -> this.recursive = true;
+                case "--rollback" -> this.rollBack = true;
+                case "--count", "--seed", "--sizes" -> {
+                    String option = args[i];
+                    if(++i == args.length) {
+                        return usage(String.format("The option %s requires a value.", option));
+                    }
+                    try {
+                        switch (option) {
+                            case "--count" -> this.corpusCount = Integer.parseUnsignedInt(args[i]);
+                            case "--seed" -> this.corpusSeed = Long.parseLong(args[i]);
+                            default -> this.corpusSizes = CorpusGenerator.Size.parseList(args[i]);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        return usage(String.format("Invalid value \"%s\" of %s: %s", args[i], option, e.getMessage()));
+                    }
+                }
+                case "-h", "--help" -> {
+                    printUsage(this.out);
+                    return EXIT_OK;
+                }
+                default -> {
+                    if(args[i].startsWith("--")) {
+                        return usage(String.format("Unknown option %s", args[i]));
+                    }
+                    operands.add(args[i]);
+                }
+            }
+        }
+        if(operands.isEmpty()) {
+            return usage("No command given.");
+        }
+        String command = operands.get(0);
+        if(command.equals("recover")) {
+            return operands.size() == 1 ? runRecover() : usage("The command recover has no arguments.");
+        }
+        if(!List.of("scan", "plan", "dry-run", "apply", "watch", "generate").contains(command)) {
+            return usage(String.format("Unknown command %s", command));
+        }
+        if(operands.size() != 2) {
+            return usage(String.format("The command %s requires a directory.", command));
+        }
+        if(command.equals("generate")) {
+            return runGenerate(Path.of(operands.get(1)));
+        }
+        File directory = new File(operands.get(1));
+        if(!directory.isDirectory()) {
+            this.err.printf("The directory \"%s\" does not exist.%n", directory.getAbsolutePath());
+            return EXIT_ERRORS;
+        }
+        this.directory = directory.toPath();
+        try {
+            switch (command) {
+                case "scan" -> runScan(directory);
+                case "plan" -> runPlan(directory);
+                case "dry-run" -> runRename(directory, false);
+                case "watch" -> runWatch(directory);
+                default -> runRename(directory, true);
+            }
+        } catch (IOException e) {
+            this.err.println(e.getMessage());
+            return EXIT_ERRORS;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_ERRORS;
+        }
+        return this.errors == 0 ? EXIT_OK : EXIT_ERRORS;
+    }
+
+    private int usage(String message) {
+        this.err.println(message);
+        printUsage(this.err);
+        return EXIT_USAGE;
+    }
+
+    /**
+     * Prints the usage with the default values of the options
+     * @param stream the stream
+     */
+    private static void printUsage(PrintStream stream) {
+        stream.printf(USAGE, RenameTemplate.DEFAULT, DEFAULT_CORPUS_COUNT, DEFAULT_CORPUS_SEED,
+                String.join(",", CorpusGenerator.DEFAULT_SIZES.stream().map(CorpusGenerator.Size::toString).toList()));
+    }
+
+    //region commands
+
+    /**
+     * Prints the name, date taken, camera model and dimensions of every file, separated by tabs
+     * @param directory the directory
+     * @throws InterruptedException if the thread is interrupted while loading
+     */
+    private void runScan(File directory) throws InterruptedException {
+        load(directory, metadata -> this.out.printf("%s\t%s\t%s\t%dx%d%n", displayPath(metadata.getFile().toPath()),
+                DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(metadata.getTakenDateTime()),
+                metadata.getModel(), metadata.getWidth(), metadata.getHeight()));
+    }
+
+    /**
+     * Prints the current and the suggested name of every file, separated by a tab
+     * @param directory the directory
+     * @throws InterruptedException if the thread is interrupted while loading
+     */
+    private void runPlan(File directory) throws InterruptedException {
+        StringBuilder buffer = new StringBuilder(64);
+        int[] sequence = {0};
+        load(directory, metadata -> this.out.printf("%s\t%s%n", displayPath(metadata.getFile().toPath()), newName(metadata, ++sequence[0], buffer)));
+    }
+
+    /**
+     * Plans renaming all files to their suggested names and prints the moves in execution order
+     * @param directory the directory
+     * @param execute determines, whether the files are renamed
+     * @throws IOException if the renames cannot be planned or journaled
+     * @throws InterruptedException if the thread is interrupted while loading
+     */
+    private void runRename(File directory, boolean execute) throws IOException, InterruptedException {
+        Path journal = RenameJournal.getDefaultPath();
+        if(execute && RenameJournal.recover(journal) != null) {
+            throw new IOException(String.format("A rename batch has been interrupted, run \"recover\" first (journal: \"%s\").", journal));
+        }
+        StringBuilder buffer = new StringBuilder(64);
+        List<RenamePlanner.Request> requests = new ArrayList<>();
+        load(directory, metadata -> requests.add(new RenamePlanner.Request(metadata.getFile().toPath(),
+                newName(metadata, requests.size() + 1, buffer))));
+
+        RenamePlan plan = new RenamePlanner(this.resolveConflicts).plan(requests);
+        for (RenamePlan.Move conflict : plan.getConflicts()) {
+            this.err.printf("Skipped \"%s\": the file at \"%s\" already exists.%n", displayPath(conflict.source()), conflict.target().toAbsolutePath());
+            this.errors++;
+        }
+        if(!execute) {
+            for (RenamePlan.Move move : plan.getMoves()) {
+                printMove(move);
+            }
+            return;
+        }
+        new RenameExecutor(new RenameJournal(journal)).execute(plan, new RenameExecutor.Listener() {
+            @Override
+            public void onMoved(RenamePlan.Move move) {
+                printMove(move);
+            }
+
+            @Override
+            public void onFailed(RenamePlan.Move move, IOException e) {
+                printFailure(move, e);
+            }
+        });
+    }
+
+    /**
+     * Renames the files arriving in the directory until the process is stopped
+     * @param directory the directory
+     * @throws IOException if the directory cannot be watched or the renames cannot be journaled
+     * @throws InterruptedException if the thread is interrupted
+     */
+    private void runWatch(File directory) throws IOException, InterruptedException {
+        WatchFolderDaemon daemon = new WatchFolderDaemon(directory.toPath(), this.template, this.resolveConflicts, new WatchFolderDaemon.Listener() {
+            @Override
+            public void onRenamed(RenamePlan.Move move) {
+                printMove(move);
+            }
+
+            @Override
+            public void onFailed(Path file, Exception e) {
+                err.printf("Renaming \"%s\" failed: %s%n", file.toAbsolutePath(), e.getMessage());
+            }
+
+            @Override
+            public void onBatch(WatchFolderDaemon.Metrics metrics) {
+                out.flush();
+                err.println(metrics);
+            }
+        });
+        this.err.printf("Watching \"%s\"%n", directory.getAbsolutePath());
+        daemon.run();
+    }
+
+    /**
+     * Completes or rolls back an interrupted rename batch
+     * @return the exit code
+     */
+    private int runRecover() {
+        try {
+            RenameJournal.Recovery recovery = RenameJournal.recover(RenameJournal.getDefaultPath());
+            if(recovery == null) {
+                this.out.println("No interrupted rename batch found.");
+                return EXIT_OK;
+            }
+            RenameExecutor.Listener listener = new RenameExecutor.Listener() {
+                @Override
+                public void onMoved(RenamePlan.Move move) {
+                    printMove(move);
+                }
+
+                @Override
+                public void onFailed(RenamePlan.Move move, IOException e) {
+                    printFailure(move, e);
+                }
+            };
+            if(this.rollBack) {
+                recovery.rollBack(listener);
+            } else {
+                recovery.rollForward(listener);
+            }
+        } catch (IOException e) {
+            this.err.println(e.getMessage());
+            return EXIT_ERRORS;
+        }
+        return this.errors == 0 ? EXIT_OK : EXIT_ERRORS;
+    }
+
+    /**
+     * Writes a synthetic corpus of JPG files into the directory
+     * @param directory the directory, which is created if it does not exist
+     * @return the exit code
+     */
+    private int runGenerate(Path directory) {
+        try {
+            CorpusGenerator.Statistics statistics = new CorpusGenerator(this.corpusSeed, this.corpusSizes).generate(directory, this.corpusCount);
+            this.out.println(statistics);
+        } catch (IOException e) {
+            this.err.println(e.getMessage());
+            return EXIT_ERRORS;
+        }
+        return EXIT_OK;
+    }
+
+    //endregion
+
+    //region helpers
+
+    /**
+     * Loads the metadata of the JPG files of the directory in the order of the walk, i.e. sorted by path, so the sequence numbers are reproducible
+     * and match the numbers of the UI
+     * @param directory the directory
+     * @param onLoaded called for every loaded file, in the order of the names
+     * @throws InterruptedException if the thread is interrupted while loading
+     */
+    private void load(File directory, Consumer<JpgMetadata> onLoaded) throws InterruptedException {
+        List<File> files = new ArrayList<>();
+        Queue<String> listingErrors = new ConcurrentLinkedQueue<>();
+        new DirectoryWalker().walk(directory.toPath(), this.recursive, path -> files.add(path.toFile()),
+                (path, e) -> listingErrors.add(String.format("Could not list the directory \"%s\": %s", path.toAbsolutePath(), e.getMessage())));
+        for (String error : listingErrors) {
+            this.err.println(error);
+            this.errors++;
+        }
+        MetadataIndex index = this.useIndex ? MetadataIndex.open(directory) : null;
+        new JpgFileLoader().load(files, index, onLoaded, (file, e) -> {
+            this.err.printf("Could not open the image at \"%s\": %s%n", file.getAbsolutePath(), e.getMessage());
+            this.errors++;
+        });
+        if(index != null) {
+            try {
+                index.save();
+            } catch (IOException e) {
+                // the index only speeds up the next run
+                this.err.printf("Saving the metadata index failed: %s%n", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Formats the new name of the file, including the extension
+     * @param metadata the metadata of the file
+     * @param sequence the position of the file, starting at 1
+     * @param buffer the buffer used for formatting
+     * @return the new name
+     */
+    private String newName(JpgMetadata metadata, int sequence, StringBuilder buffer) {
+        this.template.formatTo(metadata, metadata.getFile().getName(), sequence, buffer);
+        return buffer.append(".jpg").toString();
+    }
+
+    private void printMove(RenamePlan.Move move) {
+        this.out.printf("%s -> %s%n", displayPath(move.source()), move.target().getFileName());
+    }
+
+    /**
+     * Returns the path of the file relative to the loaded directory, which is the file name unless the directory is loaded recursively
+     * @param file the file
+     * @return the path to display
+     */
+    private String displayPath(Path file) {
+        Path parent = file.getParent();
+        if(this.directory == null || parent == null || parent.equals(this.directory)) {
+            return file.getFileName().toString();
+        }
+        return this.directory.relativize(file).toString();
+    }
+
+    private void printFailure(RenamePlan.Move move, IOException e) {
+        this.err.printf("Renaming \"%s\" to \"%s\" failed: %s%n", move.source().toAbsolutePath(), move.target().getFileName(), e.getMessage());
+        this.errors++;
+    }
+
+    //endregion
+}
@@ -0,0 +1,265 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class maintains an on-disk index of the metadata of the JPG files in a directory.
+ * An entry is keyed by the path of the file relative to the directory (the file name for files directly in the directory,
+ * so the index of a directory also covers its subdirectories) and is only used while the size and the modification time
+ * of the file are unchanged, so reopening a directory only parses new or modified files.
+ * <p>
+ * The index is stored in a compact binary format, which is read completely when it is opened. The file is not memory-mapped,
+ * because a mapped file cannot be replaced by {@link #save()} on Windows while the mapping is alive:
+ * <pre>
+ * header: int magic, int version, short directory length, absolute directory path (UTF-8), int entry count
+ * entry:  short path length, relative path (UTF-8), long size, long modified (ms), long taken (ms),
+ *         short model length, model (UTF-8), int width, int height,
+ *         long thumbnail offset, int thumbnail length (position of the embedded EXIF thumbnail in the JPG file)
+ * </pre>
+ * The thumbnails themselves are not stored, they are read from the JPG file when they are shown.
+ * The index file is named after a hash of the directory path; the path in the header tells apart directories
+ * whose hashes collide, the index of another directory is treated as empty.
+ */
+public class MetadataIndex {
+
+    /**
+     * The system property used to configure the directory the index files are stored in
+     */
+    public static final String INDEX_DIRECTORY_PROPERTY = "jpgrenamer.index.dir";
+
+    private static final int MAGIC = 0x4A524958; // "JRIX"
+
+    private static final int VERSION = 4;
+
+    private static final String INDEX_FILE_EXTENSION = ".idx";
+
+    //region fields
+    private final Path directory;
+
+    private final Path indexFile;
+
+    /**
+     * The entries read from the index file
+     */
+    private final Map<String, Entry> storedEntries;
+
+    /**
+     * The entries of the files loaded in this session, which are written on {@link #save()}
+     */
+    private final Map<String, Entry> currentEntries = new ConcurrentHashMap<>();
+    //endregion
+
+    /**
+     * Creates a new index
+     * @param directory the absolute path of the directory containing the JPG files
+     * @param indexFile the file the index is stored in
+     * @param storedEntries the entries read from the index file
+     */
+    private MetadataIndex(Path directory, Path indexFile, Map<String, Entry> storedEntries) {
+        this.directory = directory;
+        this.indexFile = indexFile;
+        this.storedEntries = storedEntries;
+    }
+
+    //region opening and saving
+
+    /**
+     * Opens the index of the given directory. If the index does not exist or cannot be read, an empty index is returned.
+     * @param directory the directory containing the JPG files
+     * @return the index
+     */
+    public static MetadataIndex open(File directory) {
+        Path path = directory.getAbsoluteFile().toPath().normalize();
+        Path indexFile = getIndexFile(directory);
+        try {
+            return new MetadataIndex(path, indexFile, read(ByteBuffer.wrap(Files.readAllBytes(indexFile)), path));
+        } catch (NoSuchFileException e) {
+            return new MetadataIndex(path, indexFile, new HashMap<>());
+        } catch (IOException | RuntimeException e) {
+            // a corrupt or outdated index is simply rebuilt
+            return new MetadataIndex(path, indexFile, new HashMap<>());
+        }
+    }
+
+    /**
+     * Returns the file the index of the given directory is stored in
+     * @param directory the directory containing the JPG files
+     * @return the index file
+     */
+    private static Path getIndexFile(File directory) {
+        String indexDirectory = System.getProperty(INDEX_DIRECTORY_PROPERTY);
+        Path root = indexDirectory != null
+                ? Path.of(indexDirectory)
+                : Path.of(System.getProperty("user.home"), ".jpgrenamer", "index");
+        String path = directory.getAbsoluteFile().toPath().normalize().toString();
+        String name = String.format("%08x%08x", path.hashCode(), new StringBuilder(path).reverse().toString().hashCode());
+        return root.resolve(name + INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Reads the entries from the content of the index file
+     * @param buffer the content of the index file
+     * @param directory the absolute path of the directory the index is read for
+     * @return the entries by relative path
+     * @throws IOException if the content has an unexpected format or belongs to another directory
+     */
+    private static Map<String, Entry> read(ByteBuffer buffer, Path directory) throws IOException {
+        if(buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a metadata index");
+        }
+        byte[] nameBuffer = new byte[256];
+        Map<String, Entry> entries;
+        try {
+            int directoryLength = Short.toUnsignedInt(buffer.getShort());
+            byte[] directoryName = new byte[directoryLength];
+            buffer.get(directoryName);
+            if(!directory.toString().equals(new String(directoryName, StandardCharsets.UTF_8))) {
+                throw new IOException(String.format("The metadata index does not belong to \"%s\"", directory));
+            }
+            int count = buffer.getInt();
+            entries = new HashMap<>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                int nameLength = Short.toUnsignedInt(buffer.getShort());
+                if(nameLength > nameBuffer.length) {
+                    nameBuffer = new byte[nameLength];
+                }
+                buffer.get(nameBuffer, 0, nameLength);
+                String name = new String(nameBuffer, 0, nameLength, StandardCharsets.UTF_8);
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                long taken = buffer.getLong();
+                int modelLength = Short.toUnsignedInt(buffer.getShort());
+                if(modelLength > nameBuffer.length) {
+                    nameBuffer = new byte[modelLength];
+                }
+                buffer.get(nameBuffer, 0, modelLength);
+                String model = new String(nameBuffer, 0, modelLength, StandardCharsets.UTF_8);
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                long thumbnailOffset = buffer.getLong();
+                int thumbnailLength = buffer.getInt();
+                entries.put(name, new Entry(size, modified, taken, model, width, height, thumbnailOffset, thumbnailLength));
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("The metadata index is truncated", e);
+        }
+        return entries;
+    }
+
+    /**
+     * Writes the entries of the files loaded in this session to the index file.
+     * Entries of files which have not been loaded (e.g. deleted files) are dropped.
+     * @throws IOException if the index file cannot be written
+     */
+    public void save() throws IOException {
+        Files.createDirectories(indexFile.getParent());
+        Path temporaryFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            byte[] directoryName = directory.toString().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(directoryName.length);
+            out.write(directoryName);
+            out.writeInt(currentEntries.size());
+            for (Map.Entry<String, Entry> mapEntry : currentEntries.entrySet()) {
+                byte[] name = mapEntry.getKey().getBytes(StandardCharsets.UTF_8);
+                Entry entry = mapEntry.getValue();
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeLong(entry.taken);
+                byte[] model = entry.model.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(model.length);
+                out.write(model);
+                out.writeInt(entry.width);
+                out.writeInt(entry.height);
+                out.writeLong(entry.thumbnailOffset);
+                out.writeInt(entry.thumbnailLength);
+            }
+        }
+        try {
+            Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporaryFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //endregion
+
+    //region loading files
+
+    /**
+     * Loads the metadata of the given file. If the index contains a valid entry for the file, the metadata is created from the entry.
+     * Otherwise, the file is parsed and a new entry is added to the index.
+     * This method may be called from multiple threads.
+     * @param file the JPG file
+     * @return the loaded metadata
+     * @throws Exception if the file cannot be loaded
+     */
+    public JpgMetadata load(File file) throws Exception {
+        BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        String name = key(file);
+
+        Entry entry = storedEntries.get(name);
+        if(entry != null && entry.size == size && entry.modified == modified) {
+            currentEntries.put(name, entry);
+            return new JpgMetadata(file, new Date(entry.taken), entry.model, entry.width, entry.height,
+                    entry.thumbnailOffset, entry.thumbnailLength);
+        }
+
+        JpgMetadata metadata = JpgMetadata.read(file);
+        currentEntries.put(name, new Entry(size, modified, metadata.getTaken().getTime(), metadata.getModel(),
+                metadata.getWidth(), metadata.getHeight(), metadata.getThumbnailOffset(), metadata.getThumbnailLength()));
+        return metadata;
+    }
+
+    /**
+     * Returns the key of the file: its name if it is directly in the directory, otherwise its path relative to the directory
+     * @param file the JPG file
+     * @return the key
+     */
+    private String key(File file) {
+        Path path = file.toPath();
+        Path parent = path.toAbsolutePath().getParent();
+        if(directory.equals(parent)) {
+            return file.getName();
+        }
+        return directory.relativize(path.toAbsolutePath().normalize()).toString();
+    }
+
+    //endregion
+
+    /**
+     * An entry of the index
+     * @param size the size of the file (bytes)
+     * @param modified the modification time of the file (ms since epoch)
+     * @param taken the date the image was taken (ms since epoch)
+     * @param model the camera model, or an empty String
+     * @param width the width of the image (pixels), or -1
+     * @param height the height of the image (pixels), or -1
+     * @param thumbnailOffset the position of the embedded thumbnail in the JPG file, or -1
+     * @param thumbnailLength the length of the embedded thumbnail, or 0
+     */
+    private record Entry(long size, long modified, long taken, String model, int width, int height,
+                         long thumbnailOffset, int thumbnailLength) {
+    }
+}
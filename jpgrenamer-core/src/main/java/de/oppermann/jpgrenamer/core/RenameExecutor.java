@@ -0,0 +1,101 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * This class executes the moves of a {@link RenamePlan}.
+ * The plan has already been checked for conflicts, so the moves are executed without probing the targets;
+ * a move whose target has been created since planning fails instead of overwriting it.
+ * If a {@link RenameJournal} is given, the moves are journaled, so an interrupted execution can be recovered.
+ */
+public class RenameExecutor {
+
+    private final RenameJournal journal;
+
+    /**
+     * Creates a new executor without a journal
+     */
+    public RenameExecutor() {
+        this(null);
+    }
+
+    /**
+     * Creates a new executor
+     * @param journal the journal, or null
+     */
+    public RenameExecutor(RenameJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Executes the moves of the plan in order
+     * @param plan the plan
+     * @param listener notified about every move, and asked whether the execution has been cancelled
+     * @return the number of executed moves
+     * @throws IOException if the journal cannot be written, the remaining moves are not executed
+     */
+    public int execute(RenamePlan plan, Listener listener) throws IOException {
+        if(journal != null) {
+            journal.begin(plan);
+        }
+        int moved = 0;
+        try {
+            List<RenamePlan.Move> moves = plan.getMoves();
+            for (int i = 0; i < moves.size(); i++) {
+                RenamePlan.Move move = moves.get(i);
+                // a cycle is never left with a file at its temporary name
+                if(plan.isGroupStart(i) && listener.isCancelled()) {
+                    break;
+                }
+                try {
+                    Files.move(move.source(), move.target());
+                } catch (IOException e) {
+                    listener.onFailed(move, e);
+                    continue;
+                }
+                if(journal != null) {
+                    journal.markDone(i);
+                }
+                moved++;
+                listener.onMoved(move);
+            }
+            if(journal != null) {
+                journal.commit();
+            }
+        } finally {
+            if(journal != null) {
+                journal.close();
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Receives the results of the executed moves
+     */
+    public interface Listener {
+
+        /**
+         * Called after a file has been moved
+         * @param move the move
+         */
+        void onMoved(RenamePlan.Move move);
+
+        /**
+         * Called if a file could not be moved
+         * @param move the move
+         * @param e the cause
+         */
+        void onFailed(RenamePlan.Move move, IOException e);
+
+        /**
+         * Returns whether the execution should stop. Asked before every group of moves (see {@link RenamePlan#isGroupStart(int)})
+         * @return true, if the execution has been cancelled
+         */
+        default boolean isCancelled() {
+            return false;
+        }
+    }
+}
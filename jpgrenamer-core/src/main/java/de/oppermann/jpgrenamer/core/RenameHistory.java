@@ -0,0 +1,306 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class keeps the history of executed rename batches, so a batch can be undone and redone as a whole.
+ * <p>
+ * A batch is stored compactly: every directory is stored once, and every move as the index of its directory,
+ * the source name and the difference of the target name to the source name (length of the common prefix and suffix,
+ * and the differing middle part). Moves through temporary names are stored as the resulting move of the file.
+ * Undoing or redoing a batch returns rename requests, which are planned like a forward batch.
+ * The methods are thread-safe.
+ */
+public class RenameHistory {
+
+    /**
+     * The maximum number of batches which can be undone
+     */
+    private static final int MAX_BATCHES = 100;
+
+    private final Deque<Batch> undoBatches = new ArrayDeque<>();
+
+    private final Deque<Batch> redoBatches = new ArrayDeque<>();
+
+    /**
+     * Records an executed batch. The batches which have been undone cannot be redone afterwards.
+     * @param moves the executed moves, in execution order
+     */
+    public synchronized void record(List<RenamePlan.Move> moves) {
+        Batch batch = Batch.encode(moves);
+        if(batch.count == 0) {
+            return;
+        }
+        push(undoBatches, batch);
+        redoBatches.clear();
+    }
+
+    /**
+     * Returns whether there is a batch to undo
+     * @return true, if a batch can be undone
+     */
+    public synchronized boolean canUndo() {
+        return !undoBatches.isEmpty();
+    }
+
+    /**
+     * Returns whether there is a batch to redo
+     * @return true, if a batch can be redone
+     */
+    public synchronized boolean canRedo() {
+        return !redoBatches.isEmpty();
+    }
+
+    /**
+     * Returns the renames which undo the last batch, in execution order
+     * @return the rename requests, empty if there is no batch to undo
+     */
+    public synchronized List<RenamePlanner.Request> getUndoRequests() {
+        return undoBatches.isEmpty() ? List.of() : undoBatches.peek().reverse();
+    }
+
+    /**
+     * Returns the renames which redo the last undone batch, in execution order
+     * @return the rename requests, empty if there is no batch to redo
+     */
+    public synchronized List<RenamePlanner.Request> getRedoRequests() {
+        return redoBatches.isEmpty() ? List.of() : redoBatches.peek().reverse();
+    }
+
+    /**
+     * Records that the last batch has been undone. If only a part of the batch has been undone, e.g. because the task
+     * has been cancelled or some files could not be renamed, the other part is kept to be undone later.
+     * @param moves the executed moves of the undo
+     */
+    public synchronized void undone(List<RenamePlan.Move> moves) {
+        executed(undoBatches, redoBatches, moves);
+    }
+
+    /**
+     * Records that the last undone batch has been redone. If only a part of the batch has been redone,
+     * the other part is kept to be redone later.
+     * @param moves the executed moves of the redo
+     */
+    public synchronized void redone(List<RenamePlan.Move> moves) {
+        executed(redoBatches, undoBatches, moves);
+    }
+
+    /**
+     * Returns the memory used by the stored moves
+     * @return the size in bytes
+     */
+    public synchronized long getSize() {
+        long size = 0;
+        for (Batch batch : undoBatches) {
+            size += batch.moves.length;
+        }
+        for (Batch batch : redoBatches) {
+            size += batch.moves.length;
+        }
+        return size;
+    }
+
+    /**
+     * Moves the executed part of the last batch to the opposite stack
+     * @param from the batches the last batch has been reversed from
+     * @param to the batches receiving the executed moves
+     * @param moves the executed moves reversing the last batch
+     */
+    private static void executed(Deque<Batch> from, Deque<Batch> to, List<RenamePlan.Move> moves) {
+        Batch batch = from.poll();
+        if(batch == null) {
+            return;
+        }
+        Set<RenamePlan.Move> reversed = new HashSet<>(Batch.netMoves(moves));
+        List<RenamePlan.Move> remaining = new ArrayList<>();
+        for (RenamePlan.Move move : batch.decode()) {
+            if(!reversed.contains(new RenamePlan.Move(move.target(), move.source()))) {
+                remaining.add(move);
+            }
+        }
+        if(!remaining.isEmpty()) {
+            from.push(Batch.encode(remaining));
+        }
+        Batch executed = Batch.encode(moves);
+        if(executed.count > 0) {
+            push(to, executed);
+        }
+    }
+
+    private static void push(Deque<Batch> batches, Batch batch) {
+        batches.push(batch);
+        if(batches.size() > MAX_BATCHES) {
+            batches.removeLast();
+        }
+    }
+
+    /**
+     * The moves of an executed batch
+     */
+    private static class Batch {
+
+        private final Path[] directories;
+
+        /**
+         * The encoded moves, each move consists of: directory index, source name, common prefix length,
+         * common suffix length and middle part of the target name. Numbers are stored as variable-length integers,
+         * strings as length and UTF-8 bytes.
+         */
+        private final byte[] moves;
+
+        private final int count;
+
+        private Batch(Path[] directories, byte[] moves, int count) {
+            this.directories = directories;
+            this.moves = moves;
+            this.count = count;
+        }
+
+        /**
+         * Encodes the moves
+         * @param moves the moves, source and target have to be in the same directory
+         * @return the batch
+         */
+        static Batch encode(List<RenamePlan.Move> moves) {
+            moves = netMoves(moves);
+            Map<Path, Integer> directoryIndices = new HashMap<>();
+            List<Path> directories = new ArrayList<>();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(moves.size() * 32);
+            for (RenamePlan.Move move : moves) {
+                Path directory = move.source().getParent();
+                if(directory == null || !directory.equals(move.target().getParent())) {
+                    throw new IllegalArgumentException(String.format("The move from \"%s\" to \"%s\" changes the directory.", move.source(), move.target()));
+                }
+                Integer directoryIndex = directoryIndices.get(directory);
+                if(directoryIndex == null) {
+                    directoryIndex = directories.size();
+                    directoryIndices.put(directory, directoryIndex);
+                    directories.add(directory);
+                }
+                String source = move.source().getFileName().toString();
+                String target = move.target().getFileName().toString();
+                int prefix = 0;
+                int maxLength = Math.min(source.length(), target.length());
+                while (prefix < maxLength && source.charAt(prefix) == target.charAt(prefix)) {
+                    prefix++;
+                }
+                if(prefix > 0 && Character.isHighSurrogate(source.charAt(prefix - 1))) {
+                    // do not split a surrogate pair, the middle part has to be valid UTF-16
+                    prefix--;
+                }
+                int suffix = 0;
+                while (suffix < maxLength - prefix
+                        && source.charAt(source.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix)) {
+                    suffix++;
+                }
+                if(suffix > 0 && Character.isLowSurrogate(source.charAt(source.length() - suffix))) {
+                    suffix--;
+                }
+                writeInt(out, directoryIndex);
+                writeString(out, source);
+                writeInt(out, prefix);
+                writeInt(out, suffix);
+                writeString(out, target.substring(prefix, target.length() - suffix));
+            }
+            return new Batch(directories.toArray(new Path[0]), out.toByteArray(), moves.size());
+        }
+
+        /**
+         * Combines the moves of every file into a single move, e.g. the moves through a temporary name
+         * @param moves the executed moves, in execution order
+         * @return the resulting moves
+         */
+        private static List<RenamePlan.Move> netMoves(List<RenamePlan.Move> moves) {
+            // the original path of every moved file, by its current path
+            Map<Path, Path> sources = new LinkedHashMap<>();
+            for (RenamePlan.Move move : moves) {
+                Path source = sources.remove(move.source());
+                sources.put(move.target(), source != null ? source : move.source());
+            }
+            List<RenamePlan.Move> result = new ArrayList<>(sources.size());
+            sources.forEach((target, source) -> {
+                if(!target.equals(source)) {
+                    result.add(new RenamePlan.Move(source, target));
+                }
+            });
+            return result;
+        }
+
+        /**
+         * Decodes the moves
+         * @return the moves, in execution order
+         */
+        List<RenamePlan.Move> decode() {
+            List<RenamePlan.Move> result = new ArrayList<>(count);
+            int[] position = {0};
+            for (int i = 0; i < count; i++) {
+                Path directory = directories[readInt(position)];
+                String source = readString(position);
+                int prefix = readInt(position);
+                int suffix = readInt(position);
+                String middle = readString(position);
+                String target = source.substring(0, prefix) + middle + source.substring(source.length() - suffix);
+                result.add(new RenamePlan.Move(directory.resolve(source), directory.resolve(target)));
+            }
+            return result;
+        }
+
+        /**
+         * Decodes the moves and returns the renames reversing them, in reverse order
+         * @return the rename requests
+         */
+        List<RenamePlanner.Request> reverse() {
+            List<RenamePlan.Move> moves = decode();
+            RenamePlanner.Request[] requests = new RenamePlanner.Request[count];
+            for (int i = 0; i < count; i++) {
+                RenamePlan.Move move = moves.get(i);
+                requests[count - 1 - i] = new RenamePlanner.Request(move.target(), move.source().getFileName().toString());
+            }
+            return List.of(requests);
+        }
+
+        private static void writeInt(ByteArrayOutputStream out, int value) {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        }
+
+        private static void writeString(ByteArrayOutputStream out, String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+
+        private int readInt(int[] position) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = moves[position[0]++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private String readString(int[] position) {
+            int length = readInt(position);
+            String value = new String(moves, position[0], length, StandardCharsets.UTF_8);
+            position[0] += length;
+            return value;
+        }
+    }
+}
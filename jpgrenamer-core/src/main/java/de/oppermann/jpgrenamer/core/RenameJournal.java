@@ -0,0 +1,533 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class is a write-ahead journal of a rename batch, so a batch interrupted by a crash can be completed or rolled back on the next start.
+ * <p>
+ * Before the first file is moved, all planned moves are written and synced to disk. The completed moves are marked afterwards;
+ * the marks are synced in groups instead of after every move, because recovery compares the file system with the plan
+ * to find moves which were completed but not marked yet. Only the mark of a move to a name which a later move leaves again
+ * (the temporary name breaking a cycle) is synced at once, because a completed cycle cannot be told apart
+ * from an untouched one by the existing names. After the batch, the journal is committed and deleted.
+ * The file is written with a {@link RandomAccessFile} instead of a FileChannel, because interrupting the renaming thread
+ * (e.g. when the batch is cancelled) would close the channel and leave the journal of a finished batch behind.
+ * <p>
+ * File format: MAGIC, VERSION, then records starting with a type byte:
+ * BEGIN (count), MOVE (source, target), DONE (index) and COMMIT. Strings are stored as length and UTF-8 bytes.
+ * A torn record at the end of the file is ignored.
+ */
+public class RenameJournal implements Closeable {
+
+    /**
+     * The system property used to configure the directory of the journal
+     */
+    public static final String DIRECTORY_PROPERTY = "jpgrenamer.journal.dir";
+
+    private static final int MAGIC = 0x4A524A4E;
+
+    private static final int VERSION = 1;
+
+    private static final byte BEGIN = 'B';
+
+    private static final byte MOVE = 'M';
+
+    private static final byte DONE = 'D';
+
+    private static final byte COMMIT = 'C';
+
+    /**
+     * The maximum number of done marks written before they are synced to disk
+     */
+    private static final int GROUP_COMMIT_SIZE = 4096;
+
+    /**
+     * The maximum time in nanoseconds after which written done marks are synced to disk
+     */
+    private static final long GROUP_COMMIT_NANOS = 50_000_000L;
+
+    private final Path path;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private RandomAccessFile file;
+
+    /**
+     * The moves whose mark is synced at once
+     */
+    private boolean[] synced;
+
+    private int unsyncedMarks;
+
+    private long lastSync;
+
+    /**
+     * Creates a new journal, the file is created by {@link #begin(RenamePlan)}
+     * @param path the path of the journal file
+     */
+    public RenameJournal(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Returns the path of the journal file used by the application, configured by {@link #DIRECTORY_PROPERTY}
+     * @return the path of the journal file
+     */
+    public static Path getDefaultPath() {
+        String journalDirectory = System.getProperty(DIRECTORY_PROPERTY);
+        Path directory = journalDirectory != null
+                ? Path.of(journalDirectory)
+                : Path.of(System.getProperty("user.home"), ".jpgrenamer", "journal");
+        return directory.resolve("rename.journal");
+    }
+
+    /**
+     * Writes all planned moves to the journal and syncs them to disk. Has to be called before the first file is moved.
+     * An interrupted batch left in the journal is never overwritten, it has to be recovered or discarded first.
+     * @param plan the plan
+     * @throws IOException if the journal cannot be written, or it still contains an interrupted batch
+     */
+    public void begin(RenamePlan plan) throws IOException {
+        if(recover(path) != null) {
+            throw new IOException(String.format("A rename batch has been interrupted, it has to be recovered first (journal: \"%s\").", path));
+        }
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        file = new RandomAccessFile(path.toFile(), "rw");
+        file.setLength(0);
+        reserve(13);
+        buffer.putInt(MAGIC).putInt(VERSION).put(BEGIN).putInt(plan.getMoves().size());
+        for (RenamePlan.Move move : plan.getMoves()) {
+            byte[] source = move.source().toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            byte[] target = move.target().toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+            reserve(9 + source.length + target.length);
+            buffer.put(MOVE).putInt(source.length).put(source).putInt(target.length).put(target);
+        }
+        sync();
+        synced = findSyncedMoves(plan.getMoves());
+    }
+
+    /**
+     * Marks the move as done. The mark is synced to disk together with the following marks,
+     * unless the move is to a temporary name.
+     * @param index the index of the move in the plan
+     * @throws IOException if the journal cannot be written
+     */
+    public void markDone(int index) throws IOException {
+        reserve(5);
+        buffer.put(DONE).putInt(index);
+        unsyncedMarks++;
+        if(synced[index] || unsyncedMarks >= GROUP_COMMIT_SIZE || System.nanoTime() - lastSync >= GROUP_COMMIT_NANOS) {
+            sync();
+        }
+    }
+
+    /**
+     * Marks the batch as finished and deletes the journal
+     * @throws IOException if the journal cannot be written or deleted
+     */
+    public void commit() throws IOException {
+        reserve(1);
+        buffer.put(COMMIT);
+        sync();
+        close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Closes the journal file without committing, so the batch will be recovered on the next start
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if(file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    /**
+     * Writes the buffer to the file, if it has less than the given number of bytes remaining
+     * @param bytes the number of bytes to be put into the buffer
+     * @throws IOException if the buffer cannot be written
+     */
+    private void reserve(int bytes) throws IOException {
+        if(buffer.remaining() < bytes) {
+            write();
+            if(buffer.capacity() < bytes) {
+                throw new IOException(String.format("The journal record of %d bytes is too large.", bytes));
+            }
+        }
+    }
+
+    /**
+     * Writes the buffer to the file
+     * @throws IOException if the buffer cannot be written
+     */
+    private void write() throws IOException {
+        file.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffer to the file and syncs the file to disk
+     * @throws IOException if the file cannot be written
+     */
+    private void sync() throws IOException {
+        write();
+        file.getFD().sync();
+        unsyncedMarks = 0;
+        lastSync = System.nanoTime();
+    }
+
+    /**
+     * Reads the journal left by an interrupted batch
+     * @param path the path of the journal file
+     * @return the interrupted batch, or null if there is none
+     * @throws IOException if the journal cannot be read
+     */
+    public static Recovery recover(Path path) throws IOException {
+        if(!Files.isRegularFile(path)) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(path));
+        List<RenamePlan.Move> moves = new ArrayList<>();
+        boolean[] done = new boolean[0];
+        try {
+            if(data.getInt() != MAGIC || data.getInt() != VERSION) {
+                throw new IOException(String.format("The file at \"%s\" is not a rename journal.", path));
+            }
+            while (data.hasRemaining()) {
+                byte type = data.get();
+                if(type == BEGIN) {
+                    done = new boolean[data.getInt()];
+                } else if(type == MOVE) {
+                    Path source = Path.of(getString(data));
+                    moves.add(new RenamePlan.Move(source, Path.of(getString(data))));
+                } else if(type == DONE) {
+                    int index = data.getInt();
+                    if(index >= 0 && index < done.length) {
+                        done[index] = true;
+                    }
+                } else if(type == COMMIT) {
+                    Files.deleteIfExists(path);
+                    return null;
+                } else {
+                    break;
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            // torn record written during the crash
+        }
+        if(moves.isEmpty() || moves.size() < done.length) {
+            // the crash happened while writing the plan, before the first move
+            Files.deleteIfExists(path);
+            return null;
+        }
+        return new Recovery(path, moves, done);
+    }
+
+    /**
+     * Returns the moves to a name which a later move leaves again, i.e. the moves to the temporary name of a cycle
+     * @param moves the planned moves
+     * @return the moves whose mark has to be synced at once
+     */
+    private static boolean[] findSyncedMoves(List<RenamePlan.Move> moves) {
+        Map<Path, Integer> lastSources = new HashMap<>();
+        for (int i = 0; i < moves.size(); i++) {
+            lastSources.put(nameKey(moves.get(i).source()), i);
+        }
+        boolean[] synced = new boolean[moves.size()];
+        for (int i = 0; i < moves.size(); i++) {
+            synced[i] = lastSources.getOrDefault(nameKey(moves.get(i).target()), -1) > i;
+        }
+        return synced;
+    }
+
+    /**
+     * Returns the key used to compare file names, case-insensitively like the {@link RenamePlanner}
+     * @param path the path
+     * @return the key
+     */
+    private static Path nameKey(Path path) {
+        Path absolute = path.toAbsolutePath();
+        return absolute.resolveSibling(absolute.getFileName().toString().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Reads a string
+     * @param data the buffer
+     * @return the string
+     */
+    private static String getString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getInt()];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A rename batch interrupted by a crash. It can be completed or rolled back, both delete the journal afterwards.
+     * The done moves are determined from the marks and the file system, so recovering again after another crash is safe.
+     */
+    public static class Recovery {
+
+        private final Path path;
+
+        private final List<RenamePlan.Move> moves;
+
+        private final boolean[] done;
+
+        private Recovery(Path path, List<RenamePlan.Move> moves, boolean[] marked) {
+            this.path = path;
+            this.moves = moves;
+            this.done = findDone(moves, marked.length >= moves.size() ? marked : Arrays.copyOf(marked, moves.size()));
+        }
+
+        /**
+         * Determines the done moves. Moves sharing a name form a chain or a cycle, in which every move waits for the previous one,
+         * and a failed move makes the following ones fail; so the done moves of such a group are a prefix of its moves.
+         * The prefix is the shortest one which leads to the names existing in the file system, and which contains the marked moves
+         * but no move after an unmarked move to a temporary name.
+         * @param moves the planned moves
+         * @param marked the moves marked as done
+         * @return the done moves
+         */
+        private static boolean[] findDone(List<RenamePlan.Move> moves, boolean[] marked) {
+            int count = moves.size();
+            Map<Path, Integer> names = new HashMap<>();
+            BitSet existing = new BitSet();
+            BitSet initial = new BitSet();
+            int[] sources = new int[count];
+            int[] targets = new int[count];
+            for (int i = 0; i < count; i++) {
+                // the source of the first move of a name existed before the batch, the target did not
+                sources[i] = name(moves.get(i).source(), true, names, existing, initial);
+                targets[i] = name(moves.get(i).target(), false, names, existing, initial);
+            }
+
+            // group the moves sharing a name
+            int[] roots = new int[names.size()];
+            for (int name = 0; name < roots.length; name++) {
+                roots[name] = name;
+            }
+            for (int i = 0; i < count; i++) {
+                roots[root(roots, sources[i])] = root(roots, targets[i]);
+            }
+            Map<Integer, List<Integer>> groups = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                groups.computeIfAbsent(root(roots, sources[i]), root -> new ArrayList<>()).add(i);
+            }
+
+            boolean[] synced = findSyncedMoves(moves);
+            BitSet predicted = (BitSet) initial.clone();
+            boolean[] counted = new boolean[names.size()];
+            boolean[] done = new boolean[count];
+            for (List<Integer> group : groups.values()) {
+                int size = group.size();
+                int lower = 0;
+                int upper = size;
+                for (int position = 0; position < size; position++) {
+                    int i = group.get(position);
+                    if(marked[i]) {
+                        lower = position + 1;
+                    } else if(synced[i]) {
+                        upper = Math.min(upper, position + 1);
+                    }
+                }
+                upper = Math.max(upper, lower);
+
+                // simulate the prefixes and compare the names they lead to with the file system
+                boolean[] matching = new boolean[size + 1];
+                int mismatches = 0;
+                for (int i : group) {
+                    for (int name : new int[] {sources[i], targets[i]}) {
+                        if(!counted[name]) {
+                            counted[name] = true;
+                            mismatches += predicted.get(name) != existing.get(name) ? 1 : 0;
+                        }
+                    }
+                }
+                for (int position = 0; position <= size; position++) {
+                    matching[position] = mismatches == 0;
+                    if(position < size) {
+                        int i = group.get(position);
+                        mismatches += set(predicted, sources[i], false, existing);
+                        mismatches += set(predicted, targets[i], true, existing);
+                    }
+                }
+
+                int prefix = -1;
+                for (int position = lower; position <= upper && prefix < 0; position++) {
+                    if(matching[position]) {
+                        prefix = position;
+                    }
+                }
+                for (int position = lower - 1; position >= 0 && prefix < 0; position--) {
+                    // e.g. a roll back interrupted by another crash
+                    if(matching[position]) {
+                        prefix = position;
+                    }
+                }
+                if(prefix < 0) {
+                    // the files have been changed by someone else, the remaining moves will report the failures
+                    prefix = lower;
+                }
+                for (int position = 0; position < prefix; position++) {
+                    done[group.get(position)] = true;
+                }
+            }
+            return done;
+        }
+
+        /**
+         * Returns the index of the name of the path, and registers the name if it is new
+         * @param path the path
+         * @param source determines, whether the path is the source of a move
+         * @param names the indices of the registered names
+         * @param existing whether the registered names exist in the file system
+         * @param initial whether the registered names existed before the batch
+         * @return the index of the name
+         */
+        private static int name(Path path, boolean source, Map<Path, Integer> names, BitSet existing, BitSet initial) {
+            Path key = nameKey(path);
+            Integer name = names.get(key);
+            if(name == null) {
+                name = names.size();
+                names.put(key, name);
+                initial.set(name, source);
+            }
+            if(!existing.get(name) && Files.exists(path)) {
+                // the name may be used with different cases, which are different files on a case-sensitive file system
+                existing.set(name);
+            }
+            return name;
+        }
+
+        /**
+         * Returns the representative name of the group of the name
+         * @param roots the parent of every name in its group
+         * @param name the index of the name
+         * @return the index of the representative name
+         */
+        private static int root(int[] roots, int name) {
+            while (roots[name] != name) {
+                roots[name] = roots[roots[name]];
+                name = roots[name];
+            }
+            return name;
+        }
+
+        /**
+         * Sets the predicted existence of the name
+         * @param predicted the predicted existence of the names
+         * @param name the index of the name
+         * @param exists whether the name exists after the simulated move
+         * @param existing whether the names exist in the file system
+         * @return the change of the number of names whose prediction differs from the file system
+         */
+        private static int set(BitSet predicted, int name, boolean exists, BitSet existing) {
+            if(predicted.get(name) == exists) {
+                return 0;
+            }
+            predicted.set(name, exists);
+            return exists == existing.get(name) ? -1 : 1;
+        }
+
+        /**
+         * Returns the planned moves of the batch
+         * @return the moves
+         */
+        public List<RenamePlan.Move> getMoves() {
+            return moves;
+        }
+
+        /**
+         * Returns the number of moves which have been done before the crash
+         * @return the number of done moves
+         */
+        public int getDoneCount() {
+            int count = 0;
+            for (int i = 0; i < moves.size(); i++) {
+                if(done[i]) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Executes the moves which have not been done yet, in the planned order
+         * @param listener notified about every move
+         * @return the number of executed moves
+         * @throws IOException if the journal cannot be deleted
+         */
+        public int rollForward(RenameExecutor.Listener listener) throws IOException {
+            int moved = 0;
+            for (int i = 0; i < moves.size(); i++) {
+                RenamePlan.Move move = moves.get(i);
+                if(done[i]) {
+                    continue;
+                }
+                if(execute(move, listener)) {
+                    moved++;
+                }
+            }
+            Files.deleteIfExists(path);
+            return moved;
+        }
+
+        /**
+         * Moves the files of the done moves back, in reverse order
+         * @param listener notified about every move back
+         * @return the number of files moved back
+         * @throws IOException if the journal cannot be deleted
+         */
+        public int rollBack(RenameExecutor.Listener listener) throws IOException {
+            int moved = 0;
+            for (int i = moves.size() - 1; i >= 0; i--) {
+                RenamePlan.Move move = moves.get(i);
+                if(!done[i]) {
+                    continue;
+                }
+                if(execute(new RenamePlan.Move(move.target(), move.source()), listener)) {
+                    moved++;
+                }
+            }
+            Files.deleteIfExists(path);
+            return moved;
+        }
+
+        /**
+         * Deletes the journal without recovering the batch
+         * @throws IOException if the journal cannot be deleted
+         */
+        public void discard() throws IOException {
+            Files.deleteIfExists(path);
+        }
+
+        private static boolean execute(RenamePlan.Move move, RenameExecutor.Listener listener) {
+            try {
+                Files.move(move.source(), move.target());
+                listener.onMoved(move);
+                return true;
+            } catch (IOException e) {
+                listener.onFailed(move, e);
+                return false;
+            }
+        }
+    }
+}
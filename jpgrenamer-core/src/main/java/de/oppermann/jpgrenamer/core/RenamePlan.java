@@ -0,0 +1,88 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * This class contains the moves planned by the {@link RenamePlanner} for a batch of renames,
+ * and the renames which could not be planned because their target name is already taken.
+ * The moves form groups, the chains and cycles of the planner, which have to be executed completely:
+ * a cycle leaves a file at a temporary name until its last move.
+ */
+public class RenamePlan {
+
+    private final List<Move> moves;
+
+    private final List<Move> conflicts;
+
+    /**
+     * The indexes of the moves starting a group
+     */
+    private final BitSet groupStarts;
+
+    /**
+     * Creates a new plan of independent moves, every move is a group of its own
+     * @param moves the planned moves, in execution order
+     * @param conflicts the renames whose target already exists
+     */
+    public RenamePlan(List<Move> moves, List<Move> conflicts) {
+        this(moves, conflicts, allMoves(moves.size()));
+    }
+
+    /**
+     * Creates a new plan
+     * @param moves the planned moves, in execution order
+     * @param conflicts the renames whose target already exists
+     * @param groupStarts the indexes of the moves starting a group
+     */
+    public RenamePlan(List<Move> moves, List<Move> conflicts, BitSet groupStarts) {
+        this.moves = List.copyOf(moves);
+        this.conflicts = List.copyOf(conflicts);
+        this.groupStarts = (BitSet) groupStarts.clone();
+    }
+
+    /**
+     * Returns the group starts of independent moves
+     * @param count the number of moves
+     * @return the indexes of all moves
+     */
+    private static BitSet allMoves(int count) {
+        BitSet groupStarts = new BitSet(count);
+        groupStarts.set(0, count);
+        return groupStarts;
+    }
+
+    /**
+     * Returns the planned moves
+     * @return the moves, in execution order
+     */
+    public List<Move> getMoves() {
+        return moves;
+    }
+
+    /**
+     * Returns whether the move starts a group. The execution may only stop before the start of a group.
+     * @param index the index of the move
+     * @return true, if the move is the first move of a chain or a cycle
+     */
+    public boolean isGroupStart(int index) {
+        return groupStarts.get(index);
+    }
+
+    /**
+     * Returns the renames which were not planned, because the target already exists and conflicts are not resolved
+     * @return the conflicting renames
+     */
+    public List<Move> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * A single move of a file
+     * @param source the current path of the file
+     * @param target the new path of the file
+     */
+    public record Move(Path source, Path target) {
+    }
+}
@@ -0,0 +1,328 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class plans the moves of a batch of renames. Every target directory is listed once;
+ * naming conflicts are detected and resolved in memory, so no file system probing is needed per candidate name.
+ * <p>
+ * The name of a file which is renamed in the same batch is free for the other renames. The moves are ordered,
+ * so every move takes place after the file at its target has been moved away: chains (A to B, B to C) are executed
+ * from their end, and cycles (A to B, B to A) are broken by moving one file to a temporary name first.
+ * Planning and ordering take linear time and need at most one extra move per cycle.
+ * <p>
+ * Names are compared case-insensitively, so the plan is also valid on case-insensitive file systems.
+ */
+public class RenamePlanner {
+
+    private final boolean resolveConflicts;
+
+    /**
+     * Creates a new planner
+     * @param resolveConflicts determines, whether naming conflicts are resolved by appending an index to the name
+     */
+    public RenamePlanner(boolean resolveConflicts) {
+        this.resolveConflicts = resolveConflicts;
+    }
+
+    /**
+     * Plans the given renames. Target names are assigned in the given order, so if several renames request the same name,
+     * the first one gets it. Renames to the current name of the file are skipped.
+     * @param requests the renames
+     * @return the plan
+     * @throws IOException if a target directory cannot be listed
+     */
+    public RenamePlan plan(List<Request> requests) throws IOException {
+        Map<Path, DirectoryState> directories = new HashMap<>();
+        List<Request> renames = new ArrayList<>(requests.size());
+        List<DirectoryState> renameDirectories = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            Path directory = request.source().toAbsolutePath().getParent();
+            DirectoryState state = directories.get(directory);
+            if(state == null) {
+                state = new DirectoryState(directory);
+                directories.put(directory, state);
+            }
+            String sourceName = request.source().getFileName().toString();
+            if(key(sourceName).equals(key(request.targetName()))) {
+                continue;
+            }
+            state.moving.put(key(sourceName), renames.size());
+            renames.add(request);
+            renameDirectories.add(state);
+        }
+
+        int count = renames.size();
+        String[] targets = new String[count];
+        boolean[] dropped = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            if(dropped[i]) {
+                continue;
+            }
+            DirectoryState state = renameDirectories.get(i);
+            String targetName = renames.get(i).targetName();
+            if(state.isTaken(targetName, dropped)) {
+                if(!resolveConflicts) {
+                    drop(i, renames, renameDirectories, dropped);
+                    continue;
+                }
+                targetName = state.findFreeName(targetName, dropped);
+            }
+            state.claimed.put(key(targetName), i);
+            targets[i] = targetName;
+        }
+
+        List<RenamePlan.Move> conflicts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if(dropped[i]) {
+                Path source = renames.get(i).source();
+                conflicts.add(new RenamePlan.Move(source, source.resolveSibling(renames.get(i).targetName())));
+            }
+        }
+        BitSet groupStarts = new BitSet();
+        return new RenamePlan(order(renames, renameDirectories, targets, dropped, groupStarts), conflicts, groupStarts);
+    }
+
+    /**
+     * Drops the rename because its target is taken. The file keeps its name, so the renames which claimed that name are dropped as well.
+     * @param index the index of the rename
+     * @param renames the renames
+     * @param renameDirectories the directory states of the renames
+     * @param dropped the dropped renames
+     */
+    private static void drop(int index, List<Request> renames, List<DirectoryState> renameDirectories, boolean[] dropped) {
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.add(index);
+        while (!pending.isEmpty()) {
+            int i = pending.poll();
+            dropped[i] = true;
+            DirectoryState state = renameDirectories.get(i);
+            Integer claimant = state.claimed.remove(key(renames.get(i).source().getFileName().toString()));
+            if(claimant != null && !dropped[claimant]) {
+                pending.add(claimant);
+            }
+        }
+    }
+
+    /**
+     * Orders the moves, so every move takes place after the file at its target has been moved away
+     * @param renames the renames
+     * @param renameDirectories the directory states of the renames
+     * @param targets the assigned target names
+     * @param dropped the dropped renames
+     * @param groupStarts receives the indexes of the moves starting a chain or a cycle
+     * @return the ordered moves
+     */
+    private static List<RenamePlan.Move> order(List<Request> renames, List<DirectoryState> renameDirectories, String[] targets, boolean[] dropped,
+                                               BitSet groupStarts) {
+        int count = renames.size();
+        // the rename which has to wait for the rename i, because its target is the source of i
+        int[] dependent = new int[count];
+        boolean[] blocked = new boolean[count];
+        Arrays.fill(dependent, -1);
+        for (int i = 0; i < count; i++) {
+            if(dropped[i]) {
+                continue;
+            }
+            Integer blocker = renameDirectories.get(i).moving.get(key(targets[i]));
+            if(blocker != null && blocker != i && !dropped[blocker]) {
+                dependent[blocker] = i;
+                blocked[i] = true;
+            }
+        }
+
+        List<RenamePlan.Move> moves = new ArrayList<>(count);
+        boolean[] ordered = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            if(dropped[i] || blocked[i]) {
+                continue;
+            }
+            // the target is free, so the chain waiting for this rename can follow
+            groupStarts.set(moves.size());
+            for (int j = i; j != -1 && !ordered[j]; j = dependent[j]) {
+                moves.add(move(renames.get(j), targets[j]));
+                ordered[j] = true;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if(dropped[i] || ordered[i]) {
+                continue;
+            }
+            // every remaining rename is part of a cycle, which is broken by a temporary name
+            Path source = renames.get(i).source();
+            String temporaryName = renameDirectories.get(i).claimTemporaryName(source.getFileName().toString(), dropped);
+            groupStarts.set(moves.size());
+            moves.add(move(renames.get(i), temporaryName));
+            ordered[i] = true;
+            for (int j = dependent[i]; j != i; j = dependent[j]) {
+                moves.add(move(renames.get(j), targets[j]));
+                ordered[j] = true;
+            }
+            moves.add(new RenamePlan.Move(source.resolveSibling(temporaryName), source.resolveSibling(targets[i])));
+        }
+        return moves;
+    }
+
+    private static RenamePlan.Move move(Request request, String targetName) {
+        return new RenamePlan.Move(request.source(), request.source().resolveSibling(targetName));
+    }
+
+    /**
+     * Returns the name with an index appended before the file extension, e.g. "name_1.jpg"
+     * @param name the file name
+     * @param index the index
+     * @return the indexed name
+     */
+    public static String indexedName(String name, int index) {
+        int extension = name.lastIndexOf('.');
+        if(extension <= 0) {
+            return String.format("%s_%d", name, index);
+        }
+        return String.format("%s_%d%s", name.substring(0, extension), index, name.substring(extension));
+    }
+
+    /**
+     * Returns whether the name is the target name with an index appended, as assigned when resolving a conflict,
+     * e.g. "name_1.jpg" for "name.jpg". Case is ignored.
+     * @param name the file name
+     * @param targetName the target name
+     * @return true, if the name is an indexed name of the target name
+     */
+    public static boolean isIndexedName(String name, String targetName) {
+        int extension = targetName.lastIndexOf('.');
+        int base = extension > 0 ? extension : targetName.length();
+        int suffix = targetName.length() - base;
+        int digits = name.length() - targetName.length() - 1;
+        if(digits < 1 || !name.regionMatches(true, 0, targetName, 0, base) || name.charAt(base) != '_'
+                || !name.regionMatches(true, name.length() - suffix, targetName, base, suffix)) {
+            return false;
+        }
+        for (int i = base + 1; i <= base + digits; i++) {
+            char c = name.charAt(i);
+            if(c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the key used to compare file names
+     * @param name the file name
+     * @return the key
+     */
+    private static String key(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * A requested rename
+     * @param source the current path of the file
+     * @param targetName the requested new file name, in the same directory
+     */
+    public record Request(Path source, String targetName) {
+    }
+
+    /**
+     * The names in a directory while planning
+     */
+    private static class DirectoryState {
+
+        /**
+         * The names of the files in the directory
+         */
+        private final Set<String> existing = new HashSet<>();
+
+        /**
+         * The indices of the renames, by the name of the file they move away
+         */
+        private final Map<String, Integer> moving = new HashMap<>();
+
+        /**
+         * The indices of the renames, by their assigned target name
+         */
+        private final Map<String, Integer> claimed = new HashMap<>();
+
+        /**
+         * The next index to try for a conflicting name, so finding a free name for many equal names stays linear
+         */
+        private final Map<String, Integer> nextIndex = new HashMap<>();
+
+        /**
+         * Lists the directory once
+         * @param directory the directory
+         * @throws IOException if the directory cannot be listed
+         */
+        DirectoryState(Path directory) throws IOException {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+                for (Path path : stream) {
+                    existing.add(key(path.getFileName().toString()));
+                }
+            }
+        }
+
+        /**
+         * Returns whether the name is assigned to another rename, or belongs to a file which is not moved away
+         * @param name the name
+         * @param dropped the dropped renames
+         * @return true, if the name is taken
+         */
+        boolean isTaken(String name, boolean[] dropped) {
+            String nameKey = key(name);
+            if(claimed.containsKey(nameKey)) {
+                return true;
+            }
+            if(!existing.contains(nameKey)) {
+                return false;
+            }
+            Integer mover = moving.get(nameKey);
+            return mover == null || dropped[mover];
+        }
+
+        /**
+         * Finds the first free indexed name
+         * @param name the requested name
+         * @param dropped the dropped renames
+         * @return the free name
+         */
+        String findFreeName(String name, boolean[] dropped) {
+            String nameKey = key(name);
+            int index = nextIndex.getOrDefault(nameKey, 1);
+            String candidate = indexedName(name, index);
+            while (isTaken(candidate, dropped)) {
+                candidate = indexedName(name, ++index);
+            }
+            nextIndex.put(nameKey, index + 1);
+            return candidate;
+        }
+
+        /**
+         * Finds and claims a free temporary name for breaking a cycle
+         * @param name the name of the file
+         * @param dropped the dropped renames
+         * @return the temporary name
+         */
+        String claimTemporaryName(String name, boolean[] dropped) {
+            String candidate = name + ".renaming";
+            for (int index = 1; isTaken(candidate, dropped) || existing.contains(key(candidate)); index++) {
+                candidate = String.format("%s.renaming%d", name, index);
+            }
+            claimed.put(key(candidate), -1);
+            return candidate;
+        }
+    }
+}
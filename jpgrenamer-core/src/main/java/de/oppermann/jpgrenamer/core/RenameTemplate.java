@@ -0,0 +1,203 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class is a compiled template for the new names of JPG files, e.g. {@code {taken:yyyyMMdd_HHmmss}_{model}_{seq:04}}.
+ * The template is parsed once into a list of parts; formatting a name appends the parts to a reusable StringBuilder,
+ * so applying a template to many files creates few temporary objects.
+ * <p>
+ * Supported tokens:
+ * <ul>
+ *     <li>{@code {taken}} or {@code {taken:pattern}}: the date taken, formatted with a {@link DateTimeFormatter} pattern</li>
+ *     <li>{@code {model}}: the camera model, empty if unknown</li>
+ *     <li>{@code {name}}: the current file name without extension</li>
+ *     <li>{@code {width}}, {@code {height}}: the image dimensions (pixels)</li>
+ *     <li>{@code {seq}} or {@code {seq:04}}: the position of the file in the list, starting at 1, optionally zero-padded to the given width</li>
+ * </ul>
+ * Braces are escaped by doubling them. Characters which are not allowed in file names are replaced by underscores.
+ */
+public class RenameTemplate {
+
+    private static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd HH-mm-ss";
+
+    /**
+     * The date formatted when compiling a date pattern, so patterns needing a time zone or offset are rejected.
+     * Initialized before {@link #DEFAULT}, which is compiled with it
+     */
+    private static final LocalDateTime SAMPLE_DATE = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    /**
+     * The default template, which names the files by the date taken
+     */
+    public static final RenameTemplate DEFAULT = compile("{taken:" + DEFAULT_DATE_PATTERN + "}");
+
+    private static final String INVALID_CHARACTERS = "\\/:*?\"<>|";
+
+    private final String source;
+
+    private final Part[] parts;
+
+    private RenameTemplate(String source, Part[] parts) {
+        this.source = source;
+        this.parts = parts;
+    }
+
+    /**
+     * Compiles the template
+     * @param template the template
+     * @return the compiled template
+     * @throws IllegalArgumentException if the template contains unknown or malformed tokens
+     */
+    public static RenameTemplate compile(String template) {
+        List<Part> parts = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if((c == '{' || c == '}') && i + 1 < template.length() && template.charAt(i + 1) == c) {
+                literal.append(c);
+                i += 2;
+            } else if(c == '{') {
+                int end = template.indexOf('}', i);
+                if(end < 0) {
+                    throw new IllegalArgumentException(String.format("The token at position %d is not closed.", i));
+                }
+                if(literal.length() > 0) {
+                    parts.add(literalPart(literal.toString()));
+                    literal.setLength(0);
+                }
+                parts.add(tokenPart(template.substring(i + 1, end)));
+                i = end + 1;
+            } else if(c == '}') {
+                throw new IllegalArgumentException(String.format("Unexpected '}' at position %d.", i));
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        if(literal.length() > 0) {
+            parts.add(literalPart(literal.toString()));
+        }
+        if(parts.isEmpty()) {
+            throw new IllegalArgumentException("The template is empty.");
+        }
+        return new RenameTemplate(template, parts.toArray(new Part[0]));
+    }
+
+    /**
+     * Formats the name of the file
+     * @param metadata the metadata of the file
+     * @param sequence the position of the file in the list, starting at 1
+     * @return the name, without extension
+     */
+    public String format(JpgMetadata metadata, int sequence) {
+        StringBuilder buffer = new StringBuilder(64);
+        formatTo(metadata, metadata.getFile().getName(), sequence, buffer);
+        return buffer.toString();
+    }
+
+    /**
+     * Formats the name of the file into the buffer, which is cleared first
+     * @param metadata the metadata of the file
+     * @param fileName the current name of the file
+     * @param sequence the position of the file in the list, starting at 1
+     * @param buffer the buffer
+     */
+    public void formatTo(JpgMetadata metadata, String fileName, int sequence, StringBuilder buffer) {
+        buffer.setLength(0);
+        for (Part part : parts) {
+            part.appendTo(metadata, fileName, sequence, buffer);
+        }
+        for (int i = 0; i < buffer.length(); i++) {
+            char c = buffer.charAt(i);
+            if(c < 0x20 || INVALID_CHARACTERS.indexOf(c) >= 0) {
+                buffer.setCharAt(i, '_');
+            }
+        }
+    }
+
+    /**
+     * Returns the template the instance was compiled from
+     * @return the template
+     */
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    private static Part literalPart(String literal) {
+        return (metadata, fileName, sequence, buffer) -> buffer.append(literal);
+    }
+
+    /**
+     * Compiles a token
+     * @param token the content of the token, without braces
+     * @return the part
+     * @throws IllegalArgumentException if the token is unknown or malformed
+     */
+    private static Part tokenPart(String token) {
+        int separator = token.indexOf(':');
+        String name = separator < 0 ? token : token.substring(0, separator);
+        String argument = separator < 0 ? null : token.substring(separator + 1);
+        switch (name) {
+            case "taken": {
+                DateTimeFormatter formatter = DateTimeFormatter.ofPattern(argument != null ? argument : DEFAULT_DATE_PATTERN);
+                try {
+                    // the pattern syntax has been checked, but fields like the zone are only resolved when formatting
+                    formatter.format(SAMPLE_DATE);
+                } catch (DateTimeException e) {
+                    throw new IllegalArgumentException(String.format("The date pattern of {taken} cannot be used: %s", e.getMessage()), e);
+                }
+                return (metadata, fileName, sequence, buffer) -> formatter.formatTo(metadata.getTakenDateTime(), buffer);
+            }
+            case "model":
+                return (metadata, fileName, sequence, buffer) -> buffer.append(metadata.getModel());
+            case "name":
+                return (metadata, fileName, sequence, buffer) -> {
+                    int extension = fileName.lastIndexOf('.');
+                    buffer.append(fileName, 0, extension > 0 ? extension : fileName.length());
+                };
+            case "width":
+                return (metadata, fileName, sequence, buffer) -> buffer.append(metadata.getWidth());
+            case "height":
+                return (metadata, fileName, sequence, buffer) -> buffer.append(metadata.getHeight());
+            case "seq": {
+                int width;
+                try {
+                    width = argument != null ? Integer.parseInt(argument) : 0;
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("The width of {seq} is not a number: %s", argument));
+                }
+                return (metadata, fileName, sequence, buffer) -> {
+                    for (int digits = digits(sequence); digits < width; digits++) {
+                        buffer.append('0');
+                    }
+                    buffer.append(sequence);
+                };
+            }
+            default:
+                throw new IllegalArgumentException(String.format("Unknown token {%s}.", token));
+        }
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /**
+     * A compiled part of the template
+     */
+    private interface Part {
+        void appendTo(JpgMetadata metadata, String fileName, int sequence, StringBuilder buffer);
+    }
+}
@@ -0,0 +1,633 @@
+package de.oppermann.jpgrenamer.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class watches a directory and renames the JPG files arriving in it, e.g. uploads from cameras.
+ * <p>
+ * A file is renamed once its size and modification time have not changed for a quiet period and it ends with
+ * the end-of-image marker, so files which are still being written are not touched. Files which are incomplete or
+ * cannot be read after the quiet period are retried a few times, because the writer may have paused. Ready files are loaded, planned and renamed in micro-batches, journaled like
+ * the renames in the UI. Memory is bounded: at most {@value #DEFAULT_MAX_PENDING} files (configurable) are tracked;
+ * arrivals beyond that, and events lost by the watch service, are picked up by rescanning the directory
+ * for files modified since the events have been lost. The files which are in the directory when the daemon starts
+ * are picked up by an initial scan. Rescanned files which already have their new name
+ * (possibly with a conflict index) are left alone, files whose new name is taken are reported once.
+ * <p>
+ * The daemon runs on the thread calling {@link #run()} until {@link #close()} is called or the thread is interrupted.
+ */
+public class WatchFolderDaemon implements Closeable {
+
+    /**
+     * The system property used to configure the quiet period (milliseconds)
+     */
+    public static final String QUIET_PROPERTY = "jpgrenamer.watch.quiet";
+
+    /**
+     * The system property used to configure the maximum number of files renamed in one batch
+     */
+    public static final String BATCH_PROPERTY = "jpgrenamer.watch.batch";
+
+    /**
+     * The system property used to configure the maximum number of tracked files
+     */
+    public static final String PENDING_PROPERTY = "jpgrenamer.watch.pending";
+
+    private static final long DEFAULT_QUIET_MILLIS = 1000;
+
+    private static final int DEFAULT_BATCH_SIZE = 512;
+
+    private static final int DEFAULT_MAX_PENDING = 10_000;
+
+    /**
+     * The number of attempts to read a file which is not changing anymore. If a file still does not end with
+     * the end-of-image marker after these attempts, it is renamed nevertheless, because some cameras append data after the image.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The time the handled files are remembered, so the events caused by the renames are ignored
+     * and rescans do not load them again
+     */
+    private static final long HANDLED_MILLIS = 10 * 60_000;
+
+    /**
+     * The maximum number of remembered handled files, relative to the maximum number of tracked files
+     */
+    private static final int HANDLED_PER_PENDING = 8;
+
+    private static final String JOURNAL_FILE_EXTENSION = ".journal";
+
+    private final Path directory;
+
+    private final RenameTemplate template;
+
+    private final boolean resolveConflicts;
+
+    private final Listener listener;
+
+    private final long quietNanos;
+
+    private final int batchSize;
+
+    private final int maxPending;
+
+    private final Path journalPath;
+
+    private final WatchService watchService;
+
+    private final JpgFileLoader loader = new JpgFileLoader();
+
+    /**
+     * The files which have arrived but have not been renamed yet, in the order of arrival
+     */
+    private final LinkedHashMap<Path, PendingFile> pending = new LinkedHashMap<>();
+
+    /**
+     * The files renamed by the daemon, found to have their new name already or reported as conflicts,
+     * with the time they have been handled (nanoseconds)
+     */
+    private final LinkedHashMap<Path, Long> handled = new LinkedHashMap<>();
+
+    private final int maxHandled;
+
+    /**
+     * The modification time from which on files may have been missed because events have been lost
+     * (milliseconds since the epoch), or -1
+     */
+    private long lostEventsSince = -1;
+
+    /**
+     * The value of the {@code {seq}} token for the next file
+     */
+    private int sequence = 1;
+
+    //region metrics
+    private long arrived;
+
+    private long renamed;
+
+    private long failed;
+
+    private long overflows;
+
+    private long lagCount;
+
+    private long totalLagNanos;
+
+    private long maxLagNanos;
+
+    private long lastLagNanos;
+
+    private volatile Metrics metrics = new Metrics(0, 0, 0, 0, 0, 0, 0, 0, 0);
+    //endregion
+
+    /**
+     * Creates a new daemon using the settings configured by the system properties {@value #QUIET_PROPERTY},
+     * {@value #BATCH_PROPERTY} and {@value #PENDING_PROPERTY}, and the journal of the directory (see {@link #getJournalPath(Path)})
+     * @param directory the directory to watch
+     * @param template the template of the new names
+     * @param resolveConflicts determines, whether naming conflicts should be resolved
+     * @param listener notified about renamed and failed files and about every batch
+     * @throws IOException if the directory cannot be watched
+     */
+    public WatchFolderDaemon(Path directory, RenameTemplate template, boolean resolveConflicts, Listener listener) throws IOException {
+        this(directory, template, resolveConflicts, listener,
+                Long.getLong(QUIET_PROPERTY, DEFAULT_QUIET_MILLIS),
+                Integer.getInteger(BATCH_PROPERTY, DEFAULT_BATCH_SIZE),
+                Integer.getInteger(PENDING_PROPERTY, DEFAULT_MAX_PENDING),
+                getJournalPath(directory));
+    }
+
+    /**
+     * Creates a new daemon
+     * @param directory the directory to watch
+     * @param template the template of the new names
+     * @param resolveConflicts determines, whether naming conflicts should be resolved
+     * @param listener notified about renamed and failed files and about every batch
+     * @param quietMillis the time a file must not change before it is renamed (milliseconds)
+     * @param batchSize the maximum number of files renamed in one batch
+     * @param maxPending the maximum number of tracked files
+     * @param journalPath the path of the journal of the renames
+     * @throws IOException if the directory cannot be watched
+     */
+    public WatchFolderDaemon(Path directory, RenameTemplate template, boolean resolveConflicts, Listener listener,
+                             long quietMillis, int batchSize, int maxPending, Path journalPath) throws IOException {
+        if(quietMillis < 0 || batchSize < 1 || maxPending < batchSize) {
+            throw new IllegalArgumentException("The quiet period must not be negative and the number of pending files must be at least the batch size");
+        }
+        this.directory = directory.toAbsolutePath();
+        this.template = template;
+        this.resolveConflicts = resolveConflicts;
+        this.listener = listener;
+        this.quietNanos = TimeUnit.MILLISECONDS.toNanos(quietMillis);
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.maxHandled = maxPending * HANDLED_PER_PENDING;
+        this.journalPath = journalPath;
+        this.watchService = this.directory.getFileSystem().newWatchService();
+        this.directory.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Returns the journal of the daemon watching the given directory. It is stored next to the journal of the application
+     * and named after the directory, so daemons watching different directories do not share a journal.
+     * @param directory the watched directory
+     * @return the path of the journal
+     */
+    public static Path getJournalPath(Path directory) {
+        String path = directory.toAbsolutePath().normalize().toString();
+        String name = String.format("watch-%08x%08x", path.hashCode(), new StringBuilder(path).reverse().toString().hashCode());
+        return RenameJournal.getDefaultPath().resolveSibling(name + JOURNAL_FILE_EXTENSION);
+    }
+
+    /**
+     * Returns the current metrics. Can be called from any thread.
+     * @return the metrics, updated after every batch
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Completes a batch of the daemon that has been interrupted and tracks the files which are already in the directory,
+     * then watches the directory until the daemon is closed
+     * @throws IOException if the journal cannot be written or recovered
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        RenameJournal.Recovery recovery = RenameJournal.recover(journalPath);
+        if(recovery != null) {
+            recovery.rollForward(new ExecutorListener());
+        }
+        // the initial scan is a rescan covering every modification time
+        lostEventsSince = 0;
+        try {
+            while (true) {
+                // rescanning lists the whole directory, so it waits until there is room for a batch
+                if(lostEventsSince >= 0 && pending.size() <= maxPending - batchSize) {
+                    rescan();
+                }
+                WatchKey key = watchService.poll(pollTimeoutNanos(), TimeUnit.NANOSECONDS);
+                if(key != null) {
+                    handleEvents(key);
+                }
+                List<PendingFile> ready = collectReady();
+                if(!ready.isEmpty()) {
+                    renameBatch(ready);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // the daemon has been closed
+        }
+    }
+
+    /**
+     * Stops the daemon. The current batch is finished.
+     * @throws IOException if the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+
+    //region watching
+
+    /**
+     * Returns the time until the next pending file may be ready
+     * @return the timeout (nanoseconds)
+     */
+    private long pollTimeoutNanos() {
+        if(pending.isEmpty()) {
+            return TimeUnit.SECONDS.toNanos(1);
+        }
+        PendingFile next = null;
+        for (PendingFile file : pending.values()) {
+            if(next == null || file.lastChange < next.lastChange) {
+                next = file;
+            }
+        }
+        return Math.max(1, next.lastChange + quietNanos - System.nanoTime());
+    }
+
+    /**
+     * Tracks the files created or modified according to the events of the key
+     * @param key the signalled key
+     */
+    private void handleEvents(WatchKey key) {
+        long now = System.nanoTime();
+        expireHandled(now);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                eventsLost();
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            if(handled.containsKey(file) || !JpgMetadata.hasJpgExtension(file.getFileName().toString())) {
+                continue;
+            }
+            track(file, now);
+        }
+        key.reset();
+    }
+
+    /**
+     * Tracks a created or modified file
+     * @param file the file
+     * @param now the current time (nanoseconds)
+     */
+    private void track(Path file, long now) {
+        PendingFile pendingFile = pending.get(file);
+        if(pendingFile == null) {
+            if(pending.size() >= maxPending) {
+                eventsLost();
+                return;
+            }
+            pendingFile = new PendingFile(file, now);
+            pending.put(file, pendingFile);
+            arrived++;
+        }
+        // the attributes are compared after the quiet period, in case the platform does not report every modification
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            pendingFile.size = attributes.size();
+            pendingFile.lastModified = attributes.lastModifiedTime().toMillis();
+        } catch (IOException e) {
+            // checked again after the quiet period
+        }
+        pendingFile.lastChange = now;
+    }
+
+    private void eventsLost() {
+        if(lostEventsSince < 0) {
+            // the lost files have been modified about now, the quiet period covers the delay of the events
+            lostEventsSince = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(quietNanos);
+        }
+        overflows++;
+    }
+
+    /**
+     * Tracks the JPG files which have been modified since events have been lost, oldest first, until the maximum number
+     * of files is reached. The remaining files are tracked by the next rescan, which starts at the last tracked modification time.
+     * @throws IOException if the directory cannot be listed
+     */
+    private void rescan() throws IOException {
+        long since = lostEventsSince;
+        lostEventsSince = -1;
+        int capacity = maxPending - pending.size();
+        // the oldest candidates, the newest of them at the head
+        PriorityQueue<RescanCandidate> candidates = new PriorityQueue<>(capacity + 1,
+                Comparator.comparingLong(RescanCandidate::lastModified).reversed());
+        boolean remaining = false;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path file : stream) {
+                if(pending.containsKey(file) || handled.containsKey(file) || !JpgMetadata.hasJpgExtension(file.getFileName().toString())) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                long lastModified = attributes.lastModifiedTime().toMillis();
+                if(attributes.isRegularFile() && lastModified >= since) {
+                    candidates.add(new RescanCandidate(file, lastModified));
+                    if(candidates.size() > capacity) {
+                        candidates.poll();
+                        remaining = true;
+                    }
+                }
+            }
+        }
+        if(remaining && !candidates.isEmpty()) {
+            lostEventsSince = candidates.peek().lastModified();
+        }
+        RescanCandidate[] oldestFirst = candidates.toArray(new RescanCandidate[0]);
+        Arrays.sort(oldestFirst, Comparator.comparingLong(RescanCandidate::lastModified));
+        long now = System.nanoTime();
+        for (RescanCandidate candidate : oldestFirst) {
+            track(candidate.path(), now);
+        }
+    }
+
+    /**
+     * Removes the files which have not changed during the quiet period from the pending files
+     * @return the ready files, at most one batch
+     * @throws IOException if the attributes of a file cannot be read
+     */
+    private List<PendingFile> collectReady() throws IOException {
+        List<PendingFile> ready = new ArrayList<>();
+        long now = System.nanoTime();
+        Iterator<PendingFile> iterator = pending.values().iterator();
+        while (iterator.hasNext() && ready.size() < batchSize) {
+            PendingFile file = iterator.next();
+            if(now - file.lastChange < quietNanos) {
+                continue;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(file.path, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                // the file has been moved away or deleted before it was ready
+                iterator.remove();
+                continue;
+            }
+            if(attributes.size() != file.size || attributes.lastModifiedTime().toMillis() != file.lastModified) {
+                file.size = attributes.size();
+                file.lastModified = attributes.lastModifiedTime().toMillis();
+                file.lastChange = now;
+                continue;
+            }
+            if(file.attempts < MAX_ATTEMPTS - 1 && !endsWithEndOfImage(file.path)) {
+                file.attempts++;
+                file.lastChange = now;
+                continue;
+            }
+            iterator.remove();
+            ready.add(file);
+        }
+        return ready;
+    }
+
+    /**
+     * Returns whether the file ends with the JPEG end-of-image marker
+     * @param path the file
+     * @return true, if the last two bytes are the marker
+     */
+    private static boolean endsWithEndOfImage(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer end = ByteBuffer.allocate(2);
+            long size = channel.size();
+            if(size < 2) {
+                return false;
+            }
+            while (end.hasRemaining() && channel.read(end, size - 2 + end.position()) >= 0) {
+                // read both bytes
+            }
+            return end.get(0) == (byte) 0xFF && end.get(1) == (byte) 0xD9;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void expireHandled(long now) {
+        Iterator<Long> iterator = handled.values().iterator();
+        while (iterator.hasNext() && (now - iterator.next() > TimeUnit.MILLISECONDS.toNanos(HANDLED_MILLIS) || handled.size() > maxHandled)) {
+            iterator.remove();
+        }
+    }
+
+    //endregion
+
+    //region renaming
+
+    /**
+     * Loads, plans and renames the ready files. Files which cannot be loaded are retried after another quiet period.
+     * @param ready the ready files, in the order of arrival
+     * @throws IOException if the renames cannot be planned or journaled
+     * @throws InterruptedException if the thread is interrupted while loading
+     */
+    private void renameBatch(List<PendingFile> ready) throws IOException, InterruptedException {
+        Map<Path, PendingFile> files = new HashMap<>();
+        List<File> toLoad = new ArrayList<>(ready.size());
+        for (PendingFile file : ready) {
+            files.put(file.path, file);
+            toLoad.add(file.path.toFile());
+        }
+        StringBuilder buffer = new StringBuilder(64);
+        List<RenamePlanner.Request> requests = new ArrayList<>(ready.size());
+        loader.load(toLoad, metadata -> {
+            String name = metadata.getFile().getName();
+            template.formatTo(metadata, name, sequence++, buffer);
+            String targetName = buffer.append(".jpg").toString();
+            // files found by a rescan may have been renamed by the daemon before
+            if(name.equalsIgnoreCase(targetName) || RenamePlanner.isIndexedName(name, targetName)) {
+                handled.put(metadata.getFile().toPath(), System.nanoTime());
+            } else {
+                requests.add(new RenamePlanner.Request(metadata.getFile().toPath(), targetName));
+            }
+        }, (file, e) -> retry(files.get(file.toPath()), e));
+
+        RenamePlan plan = new RenamePlanner(resolveConflicts).plan(requests);
+        for (RenamePlan.Move conflict : plan.getConflicts()) {
+            // the conflict is reported once, not again for every event or rescan of the file
+            handled.put(conflict.source(), System.nanoTime());
+            failed++;
+            listener.onFailed(conflict.source(), new IOException(String.format("The file at \"%s\" already exists.", conflict.target().toAbsolutePath())));
+        }
+        long now = System.nanoTime();
+        new RenameExecutor(new RenameJournal(journalPath)).execute(plan, new ExecutorListener() {
+            @Override
+            public void onMoved(RenamePlan.Move move) {
+                PendingFile file = files.get(move.source());
+                if(file != null) {
+                    long lag = System.nanoTime() - file.arrival;
+                    lastLagNanos = lag;
+                    maxLagNanos = Math.max(maxLagNanos, lag);
+                    totalLagNanos += lag;
+                    lagCount++;
+                }
+                super.onMoved(move);
+            }
+        });
+        expireHandled(now);
+        publishMetrics();
+        listener.onBatch(metrics);
+    }
+
+    /**
+     * Tracks a file which could not be loaded again, or reports it, if the maximum number of attempts is reached
+     * @param file the file
+     * @param e the exception
+     */
+    private void retry(PendingFile file, Exception e) {
+        if(++file.attempts < MAX_ATTEMPTS && Files.exists(file.path)) {
+            file.lastChange = System.nanoTime();
+            pending.put(file.path, file);
+        } else {
+            failed++;
+            listener.onFailed(file.path, e);
+        }
+    }
+
+    private void publishMetrics() {
+        long oldestArrival = pending.isEmpty() ? 0 : pending.values().iterator().next().arrival;
+        metrics = new Metrics(arrived, renamed, failed, overflows, pending.size(),
+                pending.isEmpty() ? 0 : (System.nanoTime() - oldestArrival) / 1_000_000d,
+                lastLagNanos / 1_000_000d,
+                lagCount > 0 ? totalLagNanos / 1_000_000d / lagCount : 0,
+                maxLagNanos / 1_000_000d);
+    }
+
+    /**
+     * Remembers the renamed files and forwards the results of the moves to the listener
+     */
+    private class ExecutorListener implements RenameExecutor.Listener {
+
+        @Override
+        public void onMoved(RenamePlan.Move move) {
+            renamed++;
+            handled.put(move.target().toAbsolutePath(), System.nanoTime());
+            listener.onRenamed(move);
+        }
+
+        @Override
+        public void onFailed(RenamePlan.Move move, IOException e) {
+            failed++;
+            listener.onFailed(move.source(), e);
+        }
+    }
+
+    //endregion
+
+    /**
+     * A file which has arrived but has not been renamed yet
+     */
+    private static class PendingFile {
+
+        private final Path path;
+
+        /**
+         * The time the file has been seen first (nanoseconds)
+         */
+        private final long arrival;
+
+        /**
+         * The time the file has been seen changing last (nanoseconds)
+         */
+        private long lastChange;
+
+        private long size = -1;
+
+        private long lastModified = -1;
+
+        private int attempts;
+
+        PendingFile(Path path, long arrival) {
+            this.path = path;
+            this.arrival = arrival;
+        }
+    }
+
+    /**
+     * A file found by a rescan
+     * @param path the file
+     * @param lastModified the modification time (milliseconds since the epoch)
+     */
+    private record RescanCandidate(Path path, long lastModified) {
+    }
+
+    /**
+     * The metrics of the daemon
+     * @param arrived the number of files which have arrived
+     * @param renamed the number of renamed files
+     * @param failed the number of files which could not be renamed
+     * @param overflows the number of times events have been lost, because the watch service or the pending files overflowed
+     * @param pending the number of files waiting to be renamed
+     * @param oldestPendingMillis the time the oldest pending file is waiting (milliseconds)
+     * @param lastLagMillis the time from the arrival to the renaming of the last renamed file (milliseconds)
+     * @param averageLagMillis the average time from the arrival to the renaming of a file (milliseconds)
+     * @param maxLagMillis the maximum time from the arrival to the renaming of a file (milliseconds)
+     */
+    public record Metrics(long arrived, long renamed, long failed, long overflows, int pending,
+                          double oldestPendingMillis, double lastLagMillis, double averageLagMillis, double maxLagMillis) {
+
+        @Override
+        public String toString() {
+            return String.format("%d arrived, %d renamed, %d failed, %d pending (oldest %.0f ms), lag: last %.0f ms, average %.0f ms, max %.0f ms, %d overflows",
+                    arrived, renamed, failed, pending, oldestPendingMillis, lastLagMillis, averageLagMillis, maxLagMillis, overflows);
+        }
+    }
+
+    /**
+     * Receives the results of the daemon, called on the thread running the daemon
+     */
+    public interface Listener {
+
+        /**
+         * Called after a file has been renamed
+         * @param move the executed move
+         */
+        void onRenamed(RenamePlan.Move move);
+
+        /**
+         * Called for every file which could not be loaded or renamed
+         * @param file the file
+         * @param e the exception
+         */
+        void onFailed(Path file, Exception e);
+
+        /**
+         * Called after every batch
+         * @param metrics the current metrics
+         */
+        default void onBatch(Metrics metrics) {
+        }
+    }
+}
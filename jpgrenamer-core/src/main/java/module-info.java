@@ -0,0 +1,6 @@
+module de.oppermann.jpgrenamer.core {
+    requires org.apache.commons.imaging;
+    requires java.desktop;
+
+    exports de.oppermann.jpgrenamer.core;
+}
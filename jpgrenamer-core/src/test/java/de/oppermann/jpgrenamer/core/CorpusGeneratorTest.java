@@ -0,0 +1,76 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorpusGeneratorTest {
+
+    private static final int COUNT = 40;
+
+    @TempDir
+    Path directory;
+
+    private static CorpusGenerator generator(long seed) {
+        return new CorpusGenerator(seed, List.of(new CorpusGenerator.Size(64, 48, 3), new CorpusGenerator.Size(48, 64, 1)), 0.5, 0.5, 0.3);
+    }
+
+    /**
+     * Loads the generated files and describes their metadata
+     */
+    private static List<String> describe(Path corpus) throws Exception {
+        List<String> descriptions = new ArrayList<>();
+        for (int i = 1; i <= COUNT; i++) {
+            JpgMetadata metadata = JpgMetadata.read(corpus.resolve(String.format("IMG_%05d.jpg", i)).toFile());
+            descriptions.add(String.format("%s %s %dx%d %d %d", metadata.getTakenDateTime(), metadata.getModel(),
+                    metadata.getWidth(), metadata.getHeight(), metadata.getThumbnailOffset(), metadata.getThumbnailLength()));
+        }
+        return descriptions;
+    }
+
+    /**
+     * Plans renaming the generated files with the default template and returns the new names
+     */
+    private static List<String> planNames(Path corpus) throws Exception {
+        List<RenamePlanner.Request> requests = new ArrayList<>();
+        for (int i = 1; i <= COUNT; i++) {
+            Path file = corpus.resolve(String.format("IMG_%05d.jpg", i));
+            requests.add(new RenamePlanner.Request(file, RenameTemplate.DEFAULT.format(JpgMetadata.read(file.toFile()), i) + ".jpg"));
+        }
+        List<String> names = new ArrayList<>();
+        for (RenamePlan.Move move : new RenamePlanner(true).plan(requests).getMoves()) {
+            names.add(move.source().getFileName() + " -> " + move.target().getFileName());
+        }
+        return names;
+    }
+
+    @Test
+    void sameSeedGeneratesTheSameCorpus() throws Exception {
+        Path first = directory.resolve("first");
+        Path second = directory.resolve("second");
+
+        CorpusGenerator.Statistics firstStatistics = generator(7).generate(first, COUNT);
+        CorpusGenerator.Statistics secondStatistics = generator(7).generate(second, COUNT);
+
+        // the corpus contains files without date and bursts, whose names depend on the modification date and the conflict index
+        assertTrue(firstStatistics.withDate() < COUNT);
+        assertTrue(firstStatistics.bursts() > 0);
+        assertEquals(firstStatistics.withDate(), secondStatistics.withDate());
+        assertEquals(firstStatistics.withThumbnail(), secondStatistics.withThumbnail());
+        assertEquals(firstStatistics.bursts(), secondStatistics.bursts());
+        assertEquals(firstStatistics.bytes(), secondStatistics.bytes());
+        for (int i = 1; i <= COUNT; i++) {
+            String name = String.format("IMG_%05d.jpg", i);
+            assertEquals(-1, Files.mismatch(first.resolve(name), second.resolve(name)), name);
+        }
+        assertEquals(describe(first), describe(second));
+        assertEquals(planNames(first), planNames(second));
+    }
+}
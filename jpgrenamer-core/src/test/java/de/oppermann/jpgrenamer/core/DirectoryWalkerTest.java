@@ -0,0 +1,73 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DirectoryWalkerTest {
+
+    @TempDir
+    Path directory;
+
+    private void createFiles(String... names) throws IOException {
+        for (String name : names) {
+            Path file = directory.resolve(name);
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, name);
+        }
+    }
+
+    private List<String> relative(List<Path> paths) {
+        return paths.stream().map(path -> directory.relativize(path).toString().replace(File.separatorChar, '/')).toList();
+    }
+
+    @Test
+    void recursiveWalkHandsOverTheFilesInTheOrderOfTheirPaths() throws IOException {
+        createFiles("b.jpg", "a.jpg", "b/c.jpg", "b/a.JPG", "b/x/y.jpg", "a/z.jpg", "c.txt", "b.jpeg", "d/e/f/g.jpg");
+        List<String> expected = List.of("a.jpg", "a/z.jpg", "b.jpeg", "b.jpg", "b/a.JPG", "b/c.jpg", "b/x/y.jpg", "d/e/f/g.jpg");
+
+        for (int run = 0; run < 20; run++) {
+            List<Path> files = new ArrayList<>();
+            new DirectoryWalker(4).walk(directory, true, files::add, (path, e) -> {
+                throw new AssertionError(e);
+            });
+            assertEquals(expected, relative(files));
+        }
+    }
+
+    @Test
+    void flatWalkSkipsSubdirectories() throws IOException {
+        createFiles("b.jpg", "a.jpg", "b/c.jpg");
+
+        List<Path> files = new ArrayList<>();
+        new DirectoryWalker(4).walk(directory, false, files::add, (path, e) -> {
+            throw new AssertionError(e);
+        });
+
+        assertEquals(List.of("a.jpg", "b.jpg"), relative(files));
+    }
+
+    @Test
+    void streamHandsOverTheFilesInTheOrderOfTheirPaths() throws IOException {
+        createFiles("b/c.jpg", "a.jpg", "b.jpg");
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryWalker.FileStream stream = new DirectoryWalker(2).stream(directory, true, (path, e) -> {
+            throw new AssertionError(e);
+        })) {
+            for (File file : stream) {
+                files.add(file.toPath());
+            }
+        }
+
+        assertEquals(List.of("a.jpg", "b.jpg", "b/c.jpg"), relative(files));
+    }
+}
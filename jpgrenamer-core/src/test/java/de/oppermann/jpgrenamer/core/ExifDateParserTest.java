@@ -0,0 +1,73 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExifDateParserTest {
+
+    private static LocalDateTime parse(String value) {
+        return ExifDateParser.parse(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void parsesValidDates() {
+        assertEquals(LocalDateTime.of(2021, 10, 1, 13, 45, 59), parse("2021:10:01 13:45:59"));
+        assertEquals(LocalDateTime.of(2021, 10, 1, 13, 45, 59), parse("2021-10-01T13:45:59"));
+        assertEquals(LocalDateTime.of(2020, 2, 29, 0, 0, 0), parse("2020:02:29 00:00:00"));
+        assertEquals(LocalDateTime.of(2000, 2, 29, 23, 59, 59), parse("2000:02:29 23:59:59"));
+    }
+
+    @Test
+    void ignoresTheTerminatingNul() {
+        assertEquals(LocalDateTime.of(2021, 10, 1, 13, 45, 59), parse("2021:10:01 13:45:59\0"));
+    }
+
+    @Test
+    void rejectsUnknownDates() {
+        assertNull(parse("0000:00:00 00:00:00"));
+        assertNull(parse("0000:00:00 00:00:00\0"));
+        assertNull(parse("                   "));
+        assertNull(parse("    :  :     :  :  "));
+        byte[] nul = new byte[20];
+        assertNull(ExifDateParser.parse(nul));
+    }
+
+    @Test
+    void rejectsShortValues() {
+        assertNull(ExifDateParser.parse(null));
+        assertNull(ExifDateParser.parse(new byte[0]));
+        byte[] valid = "2021:10:01 13:45:59".getBytes(StandardCharsets.US_ASCII);
+        assertNull(ExifDateParser.parse(Arrays.copyOf(valid, valid.length - 1)));
+        assertNull(parse("2021:10:01"));
+    }
+
+    @Test
+    void rejectsOutOfRangeFields() {
+        assertNull(parse("2021:13:01 13:45:59"));
+        assertNull(parse("2021:00:01 13:45:59"));
+        assertNull(parse("2021:10:00 13:45:59"));
+        assertNull(parse("2021:10:32 13:45:59"));
+        assertNull(parse("2021:04:31 13:45:59"));
+        assertNull(parse("2021:02:29 13:45:59"));
+        assertNull(parse("1900:02:29 13:45:59"));
+        assertNull(parse("2021:10:01 24:00:00"));
+        assertNull(parse("2021:10:01 13:60:59"));
+        assertNull(parse("2021:10:01 13:45:60"));
+    }
+
+    @Test
+    void rejectsMalformedValues() {
+        assertNull(parse("2021/10/01 13:45:59"));
+        assertNull(parse("2021:10:01_13:45:59"));
+        assertNull(parse("2021:10:01 13-45-59"));
+        assertNull(parse("2021:1O:01 13:45:59"));
+        assertNull(parse("2021:10:01 13:45:5 "));
+        assertNull(parse("-021:10:01 13:45:59"));
+    }
+}
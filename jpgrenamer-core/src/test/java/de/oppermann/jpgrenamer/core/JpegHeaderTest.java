@@ -0,0 +1,147 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.apache.commons.imaging.ImageReadException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JpegHeaderTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Generates a 64x48 JPG file with EXIF data and returns its content
+     */
+    private byte[] generate(boolean withThumbnail) throws IOException {
+        Path corpus = directory.resolve(withThumbnail ? "with" : "without");
+        new CorpusGenerator(11, List.of(new CorpusGenerator.Size(64, 48, 1)), 1, withThumbnail ? 1 : 0, 0).generate(corpus, 1);
+        return Files.readAllBytes(corpus.resolve("IMG_00001.jpg"));
+    }
+
+    private static byte[] encodeWithoutExif() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(new BufferedImage(40, 30, BufferedImage.TYPE_3BYTE_BGR), "jpg", out));
+        return out.toByteArray();
+    }
+
+    private static JpegHeader read(byte[] data) throws IOException, ImageReadException {
+        return JpegHeader.read(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Returns the position of the SOS marker, searching the marker segments
+     */
+    private static int startOfScan(byte[] data) {
+        int position = 2;
+        while (Byte.toUnsignedInt(data[position + 1]) != 0xDA) {
+            position += 2 + ((Byte.toUnsignedInt(data[position + 2]) << 8) | Byte.toUnsignedInt(data[position + 3]));
+        }
+        return position;
+    }
+
+    @Test
+    void readsExifDimensionsAndThumbnailPosition() throws Exception {
+        byte[] data = generate(true);
+
+        JpegHeader header = read(data);
+
+        assertNotNull(header.getMetadata());
+        assertEquals(64, header.getWidth());
+        assertEquals(48, header.getHeight());
+        assertTrue(header.getThumbnailOffset() > 0);
+        assertTrue(header.getThumbnailLength() > 0);
+        int offset = (int) header.getThumbnailOffset();
+        byte[] thumbnail = Arrays.copyOfRange(data, offset, offset + header.getThumbnailLength());
+        assertEquals(0xFF, Byte.toUnsignedInt(thumbnail[0]));
+        assertEquals(0xD8, Byte.toUnsignedInt(thumbnail[1]));
+        assertArrayEquals(header.getThumbnailData(), thumbnail);
+    }
+
+    @Test
+    void readsExifWithoutThumbnail() throws Exception {
+        JpegHeader header = read(generate(false));
+
+        assertNotNull(header.getMetadata());
+        assertEquals(64, header.getWidth());
+        assertEquals(48, header.getHeight());
+        assertEquals(-1, header.getThumbnailOffset());
+        assertEquals(0, header.getThumbnailLength());
+        assertNull(header.getThumbnailData());
+    }
+
+    @Test
+    void readsDimensionsWithoutExif() throws Exception {
+        JpegHeader header = read(encodeWithoutExif());
+
+        assertNull(header.getMetadata());
+        assertEquals(40, header.getWidth());
+        assertEquals(30, header.getHeight());
+        assertEquals(-1, header.getThumbnailOffset());
+        assertEquals(0, header.getThumbnailLength());
+    }
+
+    @Test
+    void skipsApp1SegmentsWithoutExif() throws Exception {
+        byte[] data = generate(true);
+        JpegHeader expected = read(data);
+        byte[] xmp = "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(StandardCharsets.US_ASCII);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(data, 0, 2);
+        out.write(new byte[] {(byte) 0xFF, (byte) 0xE1, (byte) ((xmp.length + 2) >> 8), (byte) (xmp.length + 2)});
+        out.write(xmp);
+        out.write(data, 2, data.length - 2);
+
+        JpegHeader header = read(out.toByteArray());
+
+        assertNotNull(header.getMetadata());
+        assertEquals(64, header.getWidth());
+        assertEquals(expected.getThumbnailOffset() + 4 + xmp.length, header.getThumbnailOffset());
+        assertEquals(expected.getThumbnailLength(), header.getThumbnailLength());
+    }
+
+    @Test
+    void stopsAtTheStartOfScan() throws Exception {
+        byte[] data = generate(false);
+        int sos = startOfScan(data);
+        // the image data after the SOS marker is never read
+        byte[] header = Arrays.copyOf(data, sos + 2);
+
+        assertEquals(64, read(header).getWidth());
+    }
+
+    @Test
+    void rejectsFilesTruncatedBeforeTheStartOfScan() throws Exception {
+        byte[] data = generate(true);
+        int sos = startOfScan(data);
+
+        assertThrows(EOFException.class, () -> read(Arrays.copyOf(data, sos)));
+        assertThrows(EOFException.class, () -> read(Arrays.copyOf(data, sos - 3)));
+        // inside the EXIF segment
+        assertThrows(EOFException.class, () -> read(Arrays.copyOf(data, 40)));
+        assertThrows(EOFException.class, () -> read(Arrays.copyOf(data, 2)));
+    }
+
+    @Test
+    void rejectsDataWithoutStartOfImage() {
+        assertThrows(ImageReadException.class, () -> read(new byte[] {'G', 'I', 'F', '8', '9', 'a'}));
+    }
+}
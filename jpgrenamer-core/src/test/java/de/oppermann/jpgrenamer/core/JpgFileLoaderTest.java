@@ -0,0 +1,240 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JpgFileLoaderTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Generates JPG files of very different sizes, so the workers finish them out of order
+     */
+    private List<File> generate(int count) throws IOException {
+        new CorpusGenerator(3, List.of(new CorpusGenerator.Size(32, 24, 1), new CorpusGenerator.Size(1600, 1200, 1)), 1, 0.5, 0).generate(directory, count);
+        List<File> files = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            files.add(directory.resolve(String.format("IMG_%05d.jpg", i)).toFile());
+        }
+        return files;
+    }
+
+    private File invalidFile(String name) throws IOException {
+        return Files.writeString(directory.resolve(name), "not a JPG file").toFile();
+    }
+
+    private static Set<Thread> workers() {
+        return Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().startsWith("jpg-loader-")).collect(Collectors.toSet());
+    }
+
+    /**
+     * Asserts that the worker threads terminate after the load, waiting for the interrupted workers to finish
+     */
+    private static void assertWorkersTerminated() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!workers().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(Set.of(), workers());
+    }
+
+    @Test
+    void filesAreHandedOverInTheOrderOfTheInput() throws Exception {
+        List<File> files = new ArrayList<>(generate(24));
+        files.add(5, invalidFile("a.jpg"));
+        files.add(12, new File(directory.toFile(), "missing.jpg"));
+        files.add(invalidFile("z.jpg"));
+        List<File> handedOver = new ArrayList<>();
+        List<File> failed = new ArrayList<>();
+
+        JpgFileLoader.LoadStatistics statistics = new JpgFileLoader(4).load(files, metadata -> handedOver.add(metadata.getFile()), (file, e) -> {
+            handedOver.add(file);
+            failed.add(file);
+        });
+
+        assertEquals(files, handedOver);
+        assertEquals(List.of(files.get(5), files.get(12), files.get(files.size() - 1)), failed);
+        assertEquals(24, statistics.getLoaded());
+        assertEquals(3, statistics.getFailed());
+        assertWorkersTerminated();
+    }
+
+    @Test
+    void errorsAreReportedPerFile() throws Exception {
+        File invalid = invalidFile("invalid.jpg");
+        File missing = new File(directory.toFile(), "missing.jpg");
+        List<File> failed = new ArrayList<>();
+        List<Exception> errors = new ArrayList<>();
+
+        JpgFileLoader.LoadStatistics statistics = new JpgFileLoader(2).load(List.of(invalid, missing), metadata -> {
+            throw new AssertionError(metadata.getFile());
+        }, (file, e) -> {
+            failed.add(file);
+            errors.add(e);
+        });
+
+        assertEquals(List.of(invalid, missing), failed);
+        // the cause thrown by the worker is reported, not the wrapping ExecutionException
+        assertInstanceOf(IOException.class, errors.get(1));
+        assertEquals(0, statistics.getLoaded());
+        assertEquals(2, statistics.getFailed());
+    }
+
+    @Test
+    void finishedFileIsHandedOverBeforeWaitingForMoreInput() throws Exception {
+        List<File> files = generate(2);
+        CountDownLatch secondHandedOver = new CountDownLatch(1);
+        AtomicReference<Boolean> waitedInVain = new AtomicReference<>(false);
+        // a streamed input which only finds the next file after the files already found have been handed over
+        Iterable<File> input = () -> new Iterator<>() {
+            private int calls;
+
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                calls++;
+                try {
+                    if(calls == 2) {
+                        // the walker is slow, so the first file is loaded in the meantime
+                        Thread.sleep(500);
+                    } else if(calls == 3 && !secondHandedOver.await(5, TimeUnit.SECONDS)) {
+                        waitedInVain.set(true);
+                    }
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+                return next < files.size();
+            }
+
+            @Override
+            public File next() {
+                if(next >= files.size()) {
+                    throw new NoSuchElementException();
+                }
+                return files.get(next++);
+            }
+        };
+        List<File> handedOver = new ArrayList<>();
+
+        new JpgFileLoader(2).load(input, metadata -> {
+            handedOver.add(metadata.getFile());
+            if(handedOver.size() == 1) {
+                // gives the worker time to finish the second file
+                sleep(500);
+            } else {
+                secondHandedOver.countDown();
+            }
+        }, (file, e) -> {
+            throw new AssertionError(e);
+        });
+
+        assertEquals(files, handedOver);
+        assertFalse(waitedInVain.get());
+    }
+
+    @Test
+    void workersAreStoppedWhenTheCallerStopsEarly() throws Exception {
+        List<File> files = generate(40);
+
+        RuntimeException e = assertThrows(RuntimeException.class, () -> new JpgFileLoader(4).load(files, metadata -> {
+            throw new IllegalStateException("stopped");
+        }, (file, error) -> {
+        }));
+
+        assertEquals("stopped", e.getMessage());
+        assertWorkersTerminated();
+    }
+
+    @Test
+    void workersAreStoppedWhenTheCallerIsInterrupted() throws Exception {
+        List<File> files = generate(8);
+        // a streamed input which never ends by itself, like a walk of a huge directory
+        BlockingQueue<File> queue = new LinkedBlockingQueue<>(files);
+        Iterable<File> input = () -> new Iterator<>() {
+            private File next;
+
+            @Override
+            public boolean hasNext() {
+                if(next == null) {
+                    try {
+                        next = queue.take();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return true;
+            }
+
+            @Override
+            public File next() {
+                if(!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                File file = next;
+                next = null;
+                return file;
+            }
+        };
+        CountDownLatch firstHandedOver = new CountDownLatch(1);
+        List<File> handedOver = Collections.synchronizedList(new ArrayList<>());
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            try {
+                // a window of four files, so files are handed over while the input is read
+                new JpgFileLoader(1).load(input, metadata -> {
+                    handedOver.add(metadata.getFile());
+                    firstHandedOver.countDown();
+                }, (file, e) -> {
+                    throw new AssertionError(e);
+                });
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        caller.start();
+
+        assertTrue(firstHandedOver.await(10, TimeUnit.SECONDS));
+        assertFalse(workers().isEmpty());
+        caller.interrupt();
+        caller.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse(caller.isAlive());
+        assertInstanceOf(InterruptedException.class, thrown.get());
+        assertEquals(files.subList(0, handedOver.size()), handedOver);
+        assertWorkersTerminated();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetadataIndexTest {
+
+    @TempDir
+    Path directory;
+
+    @TempDir
+    Path indexDirectory;
+
+    private String previousIndexDirectory;
+
+    @BeforeEach
+    void useTemporaryIndexDirectory() {
+        previousIndexDirectory = System.setProperty(MetadataIndex.INDEX_DIRECTORY_PROPERTY, indexDirectory.toString());
+    }
+
+    @AfterEach
+    void restoreIndexDirectory() {
+        if(previousIndexDirectory != null) {
+            System.setProperty(MetadataIndex.INDEX_DIRECTORY_PROPERTY, previousIndexDirectory);
+        } else {
+            System.clearProperty(MetadataIndex.INDEX_DIRECTORY_PROPERTY);
+        }
+    }
+
+    /**
+     * Generates a JPG file in the directory and indexes it
+     */
+    private JpgMetadata indexFile(Path photos) throws Exception {
+        new CorpusGenerator(5, List.of(new CorpusGenerator.Size(64, 48, 1)), 1, 1, 0).generate(photos, 1);
+        MetadataIndex index = MetadataIndex.open(photos.toFile());
+        JpgMetadata metadata = index.load(photos.resolve("IMG_00001.jpg").toFile());
+        index.save();
+        return metadata;
+    }
+
+    /**
+     * Replaces the content of the file by bytes which cannot be parsed, keeping its size and modification time,
+     * so the file can only be loaded from an index entry
+     */
+    private static void corrupt(Path file) throws IOException {
+        long size = Files.size(file);
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.write(file, new byte[(int) size]);
+        Files.setLastModifiedTime(file, modified);
+    }
+
+    private static Path indexFileOf(Path indexDirectory) throws IOException {
+        try (var files = Files.list(indexDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".idx")).findFirst().orElseThrow();
+        }
+    }
+
+    private static void assertSameMetadata(JpgMetadata expected, JpgMetadata actual) {
+        assertEquals(expected.getTaken(), actual.getTaken());
+        assertEquals(expected.getModel(), actual.getModel());
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getThumbnailOffset(), actual.getThumbnailOffset());
+        assertEquals(expected.getThumbnailLength(), actual.getThumbnailLength());
+    }
+
+    @Test
+    void unchangedFileIsLoadedFromTheIndex() throws Exception {
+        Path photos = directory.resolve("photos");
+        JpgMetadata parsed = indexFile(photos);
+        File file = photos.resolve("IMG_00001.jpg").toFile();
+        corrupt(file.toPath());
+
+        JpgMetadata indexed = MetadataIndex.open(photos.toFile()).load(file);
+
+        assertSameMetadata(parsed, indexed);
+    }
+
+    @Test
+    void modifiedFileIsParsedAgain() throws Exception {
+        Path photos = directory.resolve("photos");
+        indexFile(photos);
+        File file = photos.resolve("IMG_00001.jpg").toFile();
+        corrupt(file.toPath());
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(Files.getLastModifiedTime(file.toPath()).toMillis() + 2000));
+
+        MetadataIndex index = MetadataIndex.open(photos.toFile());
+
+        assertThrows(Exception.class, () -> index.load(file));
+    }
+
+    @Test
+    void corruptIndexIsIgnored() throws Exception {
+        Path photos = directory.resolve("photos");
+        JpgMetadata parsed = indexFile(photos);
+        Path indexFile = indexFileOf(indexDirectory);
+        Files.write(indexFile, new byte[] {0x4A, 0x52, 0x49, 0x58, 0, 0, 0});
+
+        JpgMetadata loaded = MetadataIndex.open(photos.toFile()).load(photos.resolve("IMG_00001.jpg").toFile());
+
+        assertSameMetadata(parsed, loaded);
+    }
+
+    @Test
+    void indexOfAnotherDirectoryIsIgnored() throws Exception {
+        Path photos = directory.resolve("photos");
+        indexFile(photos);
+        Path indexFile = indexFileOf(indexDirectory);
+        // the other directory has a file with the same name, size and modification time, which cannot be parsed
+        Path others = Files.createDirectories(directory.resolve("others"));
+        Path other = others.resolve("IMG_00001.jpg");
+        Files.copy(photos.resolve("IMG_00001.jpg"), other, StandardCopyOption.COPY_ATTRIBUTES);
+        corrupt(other);
+        MetadataIndex.open(others.toFile()).save();
+        Path otherIndexFile;
+        try (var files = Files.list(indexDirectory)) {
+            otherIndexFile = files.filter(file -> !file.equals(indexFile)).findFirst().orElseThrow();
+        }
+        // simulates a collision of the hashes naming the index files
+        Files.copy(indexFile, otherIndexFile, StandardCopyOption.REPLACE_EXISTING);
+
+        MetadataIndex index = MetadataIndex.open(others.toFile());
+
+        assertThrows(Exception.class, () -> index.load(other.toFile()));
+    }
+}
@@ -0,0 +1,132 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class RenameHistoryTest {
+
+    private static final Path DIRECTORY = Path.of("photos");
+
+    private static RenamePlan.Move move(String source, String target) {
+        return new RenamePlan.Move(DIRECTORY.resolve(source), DIRECTORY.resolve(target));
+    }
+
+    private static RenamePlanner.Request request(String source, String targetName) {
+        return new RenamePlanner.Request(DIRECTORY.resolve(source), targetName);
+    }
+
+    private static boolean isValidName(String name) {
+        try {
+            DIRECTORY.resolve(name);
+            return true;
+        } catch (InvalidPathException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void undoReversesTheBatchInReverseOrder() {
+        RenameHistory history = new RenameHistory();
+        history.record(List.of(move("IMG_0001.jpg", "2021-01-01_1.jpg"), move("IMG_0002.jpg", "2021-01-01_2.jpg")));
+
+        assertEquals(List.of(request("2021-01-01_2.jpg", "IMG_0002.jpg"), request("2021-01-01_1.jpg", "IMG_0001.jpg")),
+                history.getUndoRequests());
+    }
+
+    @Test
+    void movesThroughATemporaryNameAreRecordedAsOneMove() {
+        RenameHistory history = new RenameHistory();
+        history.record(List.of(move("a.jpg", "a.jpg.renaming"), move("b.jpg", "a.jpg"), move("a.jpg.renaming", "b.jpg")));
+
+        List<RenamePlanner.Request> requests = history.getUndoRequests();
+        assertEquals(2, requests.size());
+        assertTrue(requests.contains(request("a.jpg", "b.jpg")));
+        assertTrue(requests.contains(request("b.jpg", "a.jpg")));
+    }
+
+    @Test
+    void namesOutsideTheBasicMultilingualPlaneAreRestored() {
+        // U+1F600 and U+1F601 share the high surrogate, U+1F600 and U+1F200 share the low surrogate
+        String grinning = "\uD83D\uDE00";
+        String beaming = "\uD83D\uDE01";
+        String square = "\uD83C\uDE00";
+        assumeTrue(isValidName(grinning + beaming + square), "The platform cannot encode non-BMP file names");
+        RenameHistory history = new RenameHistory();
+        history.record(List.of(
+                move(grinning + ".jpg", beaming + ".jpg"),
+                move("x" + grinning + ".jpg", "x" + square + ".jpg"),
+                move(grinning + grinning + ".jpg", grinning + ".jpeg")));
+
+        assertEquals(List.of(
+                request(grinning + ".jpeg", grinning + grinning + ".jpg"),
+                request("x" + square + ".jpg", "x" + grinning + ".jpg"),
+                request(beaming + ".jpg", grinning + ".jpg")), history.getUndoRequests());
+
+        history.undone(List.of(
+                move(grinning + ".jpeg", grinning + grinning + ".jpg"),
+                move("x" + square + ".jpg", "x" + grinning + ".jpg"),
+                move(beaming + ".jpg", grinning + ".jpg")));
+        assertEquals(List.of(
+                request(grinning + ".jpg", beaming + ".jpg"),
+                request("x" + grinning + ".jpg", "x" + square + ".jpg"),
+                request(grinning + grinning + ".jpg", grinning + ".jpeg")), history.getRedoRequests());
+    }
+
+    @Test
+    void completeUndoMovesTheBatchToRedo() {
+        RenameHistory history = new RenameHistory();
+        history.record(List.of(move("a.jpg", "b.jpg")));
+
+        history.undone(List.of(move("b.jpg", "a.jpg")));
+
+        assertFalse(history.canUndo());
+        assertEquals(List.of(request("a.jpg", "b.jpg")), history.getRedoRequests());
+    }
+
+    @Test
+    void undoWithoutExecutedMovesKeepsTheBatch() {
+        RenameHistory history = new RenameHistory();
+        history.record(List.of(move("a.jpg", "b.jpg"), move("c.jpg", "d.jpg")));
+
+        history.undone(List.of());
+
+        assertFalse(history.canRedo());
+        assertEquals(List.of(request("d.jpg", "c.jpg"), request("b.jpg", "a.jpg")), history.getUndoRequests());
+    }
+
+    @Test
+    void partialUndoKeepsTheRemainingMoves() {
+        RenameHistory history = new RenameHistory();
+        history.record(List.of(move("a.jpg", "b.jpg"), move("c.jpg", "d.jpg")));
+
+        history.undone(List.of(move("d.jpg", "c.jpg")));
+
+        assertEquals(List.of(request("b.jpg", "a.jpg")), history.getUndoRequests());
+        assertEquals(List.of(request("c.jpg", "d.jpg")), history.getRedoRequests());
+
+        history.redone(List.of(move("c.jpg", "d.jpg")));
+
+        assertFalse(history.canRedo());
+        assertEquals(List.of(request("d.jpg", "c.jpg")), history.getUndoRequests());
+    }
+
+    @Test
+    void recordingClearsRedo() {
+        RenameHistory history = new RenameHistory();
+        history.record(List.of(move("a.jpg", "b.jpg")));
+        history.undone(List.of(move("b.jpg", "a.jpg")));
+
+        history.record(List.of(move("c.jpg", "d.jpg")));
+
+        assertFalse(history.canRedo());
+        assertTrue(history.canUndo());
+    }
+}
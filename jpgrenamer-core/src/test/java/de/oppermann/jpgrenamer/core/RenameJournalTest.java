@@ -0,0 +1,354 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenameJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @TempDir
+    Path journalDirectory;
+
+    private Path journal() {
+        return journalDirectory.resolve("rename.journal");
+    }
+
+    private void createFiles(String... names) throws IOException {
+        for (String name : names) {
+            Files.writeString(directory.resolve(name), name);
+        }
+    }
+
+    private RenamePlanner.Request request(String source, String targetName) {
+        return new RenamePlanner.Request(directory.resolve(source), targetName);
+    }
+
+    private RenamePlan.Move move(String source, String target) {
+        return new RenamePlan.Move(directory.resolve(source), directory.resolve(target));
+    }
+
+    /**
+     * Plans swapping a and b and renaming c to d: a to the temporary name, b to a, the temporary name to b, c to d
+     */
+    private RenamePlan swapPlan() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg");
+        return new RenamePlanner(false).plan(List.of(request("a.jpg", "b.jpg"), request("b.jpg", "a.jpg"), request("c.jpg", "d.jpg")));
+    }
+
+    /**
+     * Executes the plan with a journal and simulates a crash after the given number of moves:
+     * the journal is closed without being committed
+     */
+    private void executeUntilCrash(RenamePlan plan, int moves) {
+        assertThrows(IllegalStateException.class, () -> new RenameExecutor(new RenameJournal(journal())).execute(plan, new RenameExecutor.Listener() {
+            private int count;
+
+            @Override
+            public void onMoved(RenamePlan.Move move) {
+                if(++count == moves) {
+                    throw new IllegalStateException("crash");
+                }
+            }
+
+            @Override
+            public void onFailed(RenamePlan.Move move, IOException e) {
+                throw new AssertionError(e);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                if(moves == 0) {
+                    throw new IllegalStateException("crash");
+                }
+                return false;
+            }
+        }));
+    }
+
+    private static final RenameExecutor.Listener FAILING_LISTENER = new RenameExecutor.Listener() {
+        @Override
+        public void onMoved(RenamePlan.Move move) {
+        }
+
+        @Override
+        public void onFailed(RenamePlan.Move move, IOException e) {
+            throw new AssertionError(e);
+        }
+    };
+
+    private void assertContent(String name, String originalName) throws IOException {
+        assertEquals(originalName, Files.readString(directory.resolve(name)), name);
+    }
+
+    private void assertFileCount(long count) throws IOException {
+        try (var files = Files.list(directory)) {
+            assertEquals(count, files.count());
+        }
+    }
+
+    private void assertOriginalState() throws IOException {
+        assertContent("a.jpg", "a.jpg");
+        assertContent("b.jpg", "b.jpg");
+        assertContent("c.jpg", "c.jpg");
+        assertFileCount(3);
+    }
+
+    private void assertRenamedState() throws IOException {
+        assertContent("a.jpg", "b.jpg");
+        assertContent("b.jpg", "a.jpg");
+        assertContent("d.jpg", "c.jpg");
+        assertFileCount(3);
+    }
+
+    @Test
+    void committedBatchLeavesNoJournal() throws IOException {
+        RenamePlan plan = swapPlan();
+
+        assertEquals(4, new RenameExecutor(new RenameJournal(journal())).execute(plan, FAILING_LISTENER));
+
+        assertFalse(Files.exists(journal()));
+        assertNull(RenameJournal.recover(journal()));
+        assertRenamedState();
+    }
+
+    @Test
+    void batchCancelledByInterruptLeavesNoJournal() throws IOException {
+        RenamePlan plan = swapPlan();
+        RenameExecutor.Listener listener = new RenameExecutor.Listener() {
+            private boolean cancelled;
+
+            @Override
+            public void onMoved(RenamePlan.Move move) {
+                // a cancelled task interrupts its thread
+                cancelled = true;
+                Thread.currentThread().interrupt();
+            }
+
+            @Override
+            public void onFailed(RenamePlan.Move move, IOException e) {
+                throw new AssertionError(e);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+        };
+
+        try {
+            assertEquals(1, new RenameExecutor(new RenameJournal(journal())).execute(plan, listener));
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        assertFalse(Files.exists(journal()));
+        assertContent("a.jpg", "a.jpg");
+        assertContent("b.jpg", "b.jpg");
+        assertContent("d.jpg", "c.jpg");
+        assertFileCount(3);
+    }
+
+    @Test
+    void missingJournalHasNothingToRecover() throws IOException {
+        assertNull(RenameJournal.recover(journal()));
+    }
+
+    @Test
+    void rollForwardAfterACrashAtEveryStep() throws IOException {
+        for (int crash = 0; crash <= 4; crash++) {
+            RenamePlan plan = swapPlan();
+            executeUntilCrash(plan, crash);
+
+            RenameJournal.Recovery recovery = RenameJournal.recover(journal());
+            assertNotNull(recovery, "crash after " + crash);
+            assertEquals(plan.getMoves(), recovery.getMoves());
+            assertEquals(4 - crash, recovery.rollForward(FAILING_LISTENER), "crash after " + crash);
+
+            assertRenamedState();
+            assertFalse(Files.exists(journal()));
+            clear();
+        }
+    }
+
+    @Test
+    void rollBackAfterACrashAtEveryStep() throws IOException {
+        for (int crash = 0; crash <= 4; crash++) {
+            RenamePlan plan = swapPlan();
+            executeUntilCrash(plan, crash);
+
+            RenameJournal.Recovery recovery = RenameJournal.recover(journal());
+            assertNotNull(recovery, "crash after " + crash);
+            assertEquals(crash, recovery.rollBack(FAILING_LISTENER), "crash after " + crash);
+
+            assertOriginalState();
+            assertFalse(Files.exists(journal()));
+            clear();
+        }
+    }
+
+    @Test
+    void cycleAndChainRecoverAfterACrashAtEveryStep() throws IOException {
+        List<RenamePlanner.Request> requests = List.of(request("p.jpg", "q.jpg"), request("q.jpg", "r.jpg"), request("r.jpg", "p.jpg"),
+                request("s.jpg", "t.jpg"), request("t.jpg", "u.jpg"));
+        for (boolean forward : new boolean[] {true, false}) {
+            for (int crash = 0; crash <= 6; crash++) {
+                createFiles("p.jpg", "q.jpg", "r.jpg", "s.jpg", "t.jpg");
+                RenamePlan plan = new RenamePlanner(false).plan(requests);
+                assertEquals(6, plan.getMoves().size());
+                executeUntilCrash(plan, crash);
+
+                RenameJournal.Recovery recovery = RenameJournal.recover(journal());
+                assertEquals(crash, recovery.getDoneCount(), "crash after " + crash);
+                if(forward) {
+                    recovery.rollForward(FAILING_LISTENER);
+                    assertContent("q.jpg", "p.jpg");
+                    assertContent("r.jpg", "q.jpg");
+                    assertContent("p.jpg", "r.jpg");
+                    assertContent("t.jpg", "s.jpg");
+                    assertContent("u.jpg", "t.jpg");
+                } else {
+                    recovery.rollBack(FAILING_LISTENER);
+                    for (String name : List.of("p.jpg", "q.jpg", "r.jpg", "s.jpg", "t.jpg")) {
+                        assertContent(name, name);
+                    }
+                }
+                assertFileCount(5);
+                clear();
+            }
+        }
+    }
+
+    /**
+     * Begins the journal and executes the first moves without marking them, like a crash before the marks are written
+     */
+    private void executeUnmarked(RenamePlan plan, int moves) throws IOException {
+        RenameJournal journal = new RenameJournal(journal());
+        journal.begin(plan);
+        for (int i = 0; i < moves; i++) {
+            Files.move(plan.getMoves().get(i).source(), plan.getMoves().get(i).target());
+        }
+        journal.close();
+    }
+
+    @Test
+    void unmarkedMovesAreFoundInTheFileSystem() throws IOException {
+        // the moves after the move to the temporary name only start once its mark is synced
+        for (int crash = 0; crash <= 2; crash++) {
+            RenamePlan plan = swapPlan();
+            executeUnmarked(plan, crash);
+
+            RenameJournal.Recovery recovery = RenameJournal.recover(journal());
+            assertEquals(crash, recovery.getDoneCount(), "crash after " + crash);
+            assertEquals(4 - crash, recovery.rollForward(FAILING_LISTENER), "crash after " + crash);
+            assertRenamedState();
+            clear();
+        }
+    }
+
+    @Test
+    void unmarkedMovesAreRolledBack() throws IOException {
+        for (int crash = 0; crash <= 2; crash++) {
+            RenamePlan plan = swapPlan();
+            executeUnmarked(plan, crash);
+
+            assertEquals(crash, RenameJournal.recover(journal()).rollBack(FAILING_LISTENER), "crash after " + crash);
+            assertOriginalState();
+            clear();
+        }
+    }
+
+    @Test
+    void recoveryInterruptedByAnotherCrashCanBeRepeated() throws IOException {
+        RenamePlan plan = swapPlan();
+        executeUntilCrash(plan, 2);
+        Path copy = journalDirectory.resolve("copy.journal");
+        Files.copy(journal(), copy);
+
+        // the first recovery completes the batch, but crashes before the journal is deleted
+        RenameJournal.recover(journal()).rollForward(FAILING_LISTENER);
+        Files.move(copy, journal());
+
+        assertEquals(0, RenameJournal.recover(journal()).rollForward(FAILING_LISTENER));
+        assertRenamedState();
+    }
+
+    @Test
+    void tornRecordAtTheEndIsIgnored() throws IOException {
+        RenamePlan plan = swapPlan();
+        executeUntilCrash(plan, 1);
+        Files.write(journal(), new byte[] {'D', 0, 0}, StandardOpenOption.APPEND);
+
+        RenameJournal.Recovery recovery = RenameJournal.recover(journal());
+
+        assertEquals(plan.getMoves(), recovery.getMoves());
+        assertEquals(3, recovery.rollForward(FAILING_LISTENER));
+        assertRenamedState();
+    }
+
+    @Test
+    void crashWhileWritingThePlanLeavesNothingToRecover() throws IOException {
+        RenamePlan plan = swapPlan();
+        executeUntilCrash(plan, 0);
+        byte[] data = Files.readAllBytes(journal());
+        // cut the journal inside the last planned move
+        Files.write(journal(), Arrays.copyOf(data, data.length - 4));
+
+        assertNull(RenameJournal.recover(journal()));
+        assertFalse(Files.exists(journal()));
+        assertOriginalState();
+    }
+
+    @Test
+    void discardDeletesTheJournal() throws IOException {
+        RenamePlan plan = swapPlan();
+        executeUntilCrash(plan, 1);
+
+        RenameJournal.recover(journal()).discard();
+
+        assertNull(RenameJournal.recover(journal()));
+    }
+
+    @Test
+    void newBatchDoesNotOverwriteAnInterruptedBatch() throws IOException {
+        RenamePlan plan = swapPlan();
+        executeUntilCrash(plan, 1);
+        byte[] interrupted = Files.readAllBytes(journal());
+
+        createFiles("x.jpg");
+        RenamePlan next = new RenamePlan(List.of(move("x.jpg", "y.jpg")), List.of());
+        assertThrows(IOException.class, () -> new RenameExecutor(new RenameJournal(journal())).execute(next, FAILING_LISTENER));
+
+        assertArrayEquals(interrupted, Files.readAllBytes(journal()));
+        assertContent("x.jpg", "x.jpg");
+        assertEquals(plan.getMoves(), RenameJournal.recover(journal()).getMoves());
+    }
+
+    /**
+     * Deletes all files of the previous run
+     */
+    private void clear() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                Files.delete(file);
+            }
+        }
+        Files.deleteIfExists(journal());
+    }
+}
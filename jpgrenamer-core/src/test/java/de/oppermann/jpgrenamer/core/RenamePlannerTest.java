@@ -0,0 +1,301 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenamePlannerTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * Creates files containing their own name, so moved files can be identified
+     */
+    private void createFiles(String... names) throws IOException {
+        for (String name : names) {
+            Files.writeString(directory.resolve(name), name);
+        }
+    }
+
+    private RenamePlanner.Request request(String source, String targetName) {
+        return new RenamePlanner.Request(directory.resolve(source), targetName);
+    }
+
+    private RenamePlan.Move move(String source, String target) {
+        return new RenamePlan.Move(directory.resolve(source), directory.resolve(target));
+    }
+
+    private void execute(RenamePlan plan) throws IOException {
+        List<IOException> failures = new ArrayList<>();
+        new RenameExecutor().execute(plan, new RenameExecutor.Listener() {
+            @Override
+            public void onMoved(RenamePlan.Move move) {
+            }
+
+            @Override
+            public void onFailed(RenamePlan.Move move, IOException e) {
+                failures.add(e);
+            }
+        });
+        assertEquals(List.of(), failures);
+    }
+
+    /**
+     * Asserts that the file with the given name holds the content of the file originally created with the given name
+     */
+    private void assertContent(String name, String originalName) throws IOException {
+        assertEquals(originalName, Files.readString(directory.resolve(name)), name);
+    }
+
+    private void assertFileCount(long count) throws IOException {
+        try (var files = Files.list(directory)) {
+            assertEquals(count, files.count());
+        }
+    }
+
+    @Test
+    void independentRenamesKeepTheirOrder() throws IOException {
+        createFiles("a.jpg", "b.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "x.jpg"), request("b.jpg", "y.jpg")));
+
+        assertEquals(List.of(move("a.jpg", "x.jpg"), move("b.jpg", "y.jpg")), plan.getMoves());
+        assertEquals(List.of(), plan.getConflicts());
+    }
+
+    @Test
+    void renamesToTheCurrentNameAreSkipped() throws IOException {
+        createFiles("a.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "a.jpg"), request("a.jpg", "A.JPG")));
+
+        assertEquals(List.of(), plan.getMoves());
+        assertEquals(List.of(), plan.getConflicts());
+    }
+
+    @Test
+    void chainIsExecutedFromItsEnd() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "b.jpg"), request("b.jpg", "c.jpg"), request("c.jpg", "d.jpg")));
+
+        assertEquals(List.of(move("c.jpg", "d.jpg"), move("b.jpg", "c.jpg"), move("a.jpg", "b.jpg")), plan.getMoves());
+        execute(plan);
+        assertContent("b.jpg", "a.jpg");
+        assertContent("c.jpg", "b.jpg");
+        assertContent("d.jpg", "c.jpg");
+        assertFalse(Files.exists(directory.resolve("a.jpg")));
+    }
+
+    @Test
+    void swapIsBrokenByATemporaryName() throws IOException {
+        createFiles("a.jpg", "b.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "b.jpg"), request("b.jpg", "a.jpg")));
+
+        assertEquals(List.of(move("a.jpg", "a.jpg.renaming"), move("b.jpg", "a.jpg"), move("a.jpg.renaming", "b.jpg")), plan.getMoves());
+        execute(plan);
+        assertContent("a.jpg", "b.jpg");
+        assertContent("b.jpg", "a.jpg");
+        assertFileCount(2);
+    }
+
+    @Test
+    void cancelledSwapIsCompletedBeforeStopping() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "b.jpg"), request("b.jpg", "a.jpg"), request("c.jpg", "x.jpg")));
+
+        assertEquals(List.of(move("c.jpg", "x.jpg"), move("a.jpg", "a.jpg.renaming"), move("b.jpg", "a.jpg"), move("a.jpg.renaming", "b.jpg")),
+                plan.getMoves());
+        assertTrue(plan.isGroupStart(0));
+        assertTrue(plan.isGroupStart(1));
+        assertFalse(plan.isGroupStart(2));
+        assertFalse(plan.isGroupStart(3));
+
+        List<RenamePlan.Move> moved = new ArrayList<>();
+        int count = new RenameExecutor().execute(plan, new RenameExecutor.Listener() {
+            @Override
+            public void onMoved(RenamePlan.Move move) {
+                moved.add(move);
+            }
+
+            @Override
+            public void onFailed(RenamePlan.Move move, IOException e) {
+                throw new AssertionError(e);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                // cancelled as soon as the file is at its temporary name
+                return moved.contains(move("a.jpg", "a.jpg.renaming"));
+            }
+        });
+
+        assertEquals(4, count);
+        assertContent("a.jpg", "b.jpg");
+        assertContent("b.jpg", "a.jpg");
+        assertContent("x.jpg", "c.jpg");
+        assertFileCount(3);
+    }
+
+    @Test
+    void cancelledBatchStopsBeforeTheNextGroup() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("c.jpg", "x.jpg"), request("a.jpg", "b.jpg"), request("b.jpg", "a.jpg")));
+
+        int count = new RenameExecutor().execute(plan, new RenameExecutor.Listener() {
+            private boolean moved;
+
+            @Override
+            public void onMoved(RenamePlan.Move move) {
+                moved = true;
+            }
+
+            @Override
+            public void onFailed(RenamePlan.Move move, IOException e) {
+                throw new AssertionError(e);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return moved;
+            }
+        });
+
+        assertEquals(1, count);
+        assertContent("a.jpg", "a.jpg");
+        assertContent("b.jpg", "b.jpg");
+        assertContent("x.jpg", "c.jpg");
+        assertFileCount(3);
+    }
+
+    @Test
+    void threeCycleNeedsOneExtraMove() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "b.jpg"), request("b.jpg", "c.jpg"), request("c.jpg", "a.jpg")));
+
+        assertEquals(4, plan.getMoves().size());
+        execute(plan);
+        assertContent("b.jpg", "a.jpg");
+        assertContent("c.jpg", "b.jpg");
+        assertContent("a.jpg", "c.jpg");
+        assertFileCount(3);
+    }
+
+    @Test
+    void cyclesAndChainsInOneBatchAreOrdered() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg", "d.jpg", "e.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("c.jpg", "d.jpg"), request("a.jpg", "b.jpg"),
+                request("d.jpg", "f.jpg"), request("b.jpg", "a.jpg"), request("e.jpg", "c.jpg")));
+
+        assertEquals(6, plan.getMoves().size());
+        execute(plan);
+        assertContent("a.jpg", "b.jpg");
+        assertContent("b.jpg", "a.jpg");
+        assertContent("c.jpg", "e.jpg");
+        assertContent("d.jpg", "c.jpg");
+        assertContent("f.jpg", "d.jpg");
+        assertFileCount(5);
+    }
+
+    @Test
+    void temporaryNameAvoidsExistingFiles() throws IOException {
+        createFiles("a.jpg", "b.jpg", "a.jpg.renaming");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "b.jpg"), request("b.jpg", "a.jpg")));
+
+        assertEquals(move("a.jpg", "a.jpg.renaming1"), plan.getMoves().get(0));
+        execute(plan);
+        assertContent("a.jpg", "b.jpg");
+        assertContent("b.jpg", "a.jpg");
+        assertContent("a.jpg.renaming", "a.jpg.renaming");
+    }
+
+    @Test
+    void conflictWithAnExistingFileIsDropped() throws IOException {
+        createFiles("a.jpg", "x.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "x.jpg")));
+
+        assertEquals(List.of(), plan.getMoves());
+        assertEquals(List.of(move("a.jpg", "x.jpg")), plan.getConflicts());
+    }
+
+    @Test
+    void droppedRenameCascadesToTheRenamesWaitingForItsName() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg", "x.jpg");
+
+        // a cannot move, so b cannot take its name, so c cannot take the name of b
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("c.jpg", "b.jpg"), request("b.jpg", "a.jpg"),
+                request("a.jpg", "x.jpg"), request("x.jpg", "x.jpg")));
+
+        assertEquals(List.of(), plan.getMoves());
+        assertEquals(List.of(move("c.jpg", "b.jpg"), move("b.jpg", "a.jpg"), move("a.jpg", "x.jpg")), plan.getConflicts());
+    }
+
+    @Test
+    void droppedRenameDoesNotAffectUnrelatedRenames() throws IOException {
+        createFiles("a.jpg", "b.jpg", "x.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "x.jpg"), request("b.jpg", "y.jpg")));
+
+        assertEquals(List.of(move("b.jpg", "y.jpg")), plan.getMoves());
+        assertEquals(List.of(move("a.jpg", "x.jpg")), plan.getConflicts());
+    }
+
+    @Test
+    void requestsForTheSameNameAreDroppedAfterTheFirst() throws IOException {
+        createFiles("a.jpg", "b.jpg");
+
+        RenamePlan plan = new RenamePlanner(false).plan(List.of(request("a.jpg", "x.jpg"), request("b.jpg", "X.jpg")));
+
+        assertEquals(List.of(move("a.jpg", "x.jpg")), plan.getMoves());
+        assertEquals(List.of(move("b.jpg", "X.jpg")), plan.getConflicts());
+    }
+
+    @Test
+    void conflictsAreResolvedWithIndexedNames() throws IOException {
+        createFiles("a.jpg", "b.jpg", "c.jpg", "x.jpg", "x_1.jpg");
+
+        RenamePlan plan = new RenamePlanner(true).plan(List.of(request("a.jpg", "x.jpg"), request("b.jpg", "x.jpg"), request("c.jpg", "x.jpg")));
+
+        assertEquals(List.of(move("a.jpg", "x_2.jpg"), move("b.jpg", "x_3.jpg"), move("c.jpg", "x_4.jpg")), plan.getMoves());
+        assertEquals(List.of(), plan.getConflicts());
+    }
+
+    @Test
+    void resolvedConflictsDoNotCascade() throws IOException {
+        createFiles("a.jpg", "b.jpg", "x.jpg");
+
+        RenamePlan plan = new RenamePlanner(true).plan(List.of(request("b.jpg", "a.jpg"), request("a.jpg", "x.jpg")));
+
+        assertEquals(List.of(move("a.jpg", "x_1.jpg"), move("b.jpg", "a.jpg")), plan.getMoves());
+        execute(plan);
+        assertContent("a.jpg", "b.jpg");
+        assertContent("x_1.jpg", "a.jpg");
+        assertContent("x.jpg", "x.jpg");
+    }
+
+    @Test
+    void indexedNamesAreRecognized() {
+        assertEquals("name_1.jpg", RenamePlanner.indexedName("name.jpg", 1));
+        assertEquals("name_12", RenamePlanner.indexedName("name", 12));
+        assertTrue(RenamePlanner.isIndexedName("NAME_12.JPG", "name.jpg"));
+        assertFalse(RenamePlanner.isIndexedName("name_.jpg", "name.jpg"));
+        assertFalse(RenamePlanner.isIndexedName("name_1a.jpg", "name.jpg"));
+    }
+}
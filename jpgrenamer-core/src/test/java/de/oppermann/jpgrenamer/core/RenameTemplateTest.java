@@ -0,0 +1,52 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RenameTemplateTest {
+
+    private static JpgMetadata metadata(String name, LocalDateTime taken, String model) {
+        Date date = Date.from(taken.atZone(ZoneId.systemDefault()).toInstant());
+        return new JpgMetadata(new File("photos", name), date, model, 4000, 3000, -1, 0);
+    }
+
+    @Test
+    void formatsAllTokens() {
+        RenameTemplate template = RenameTemplate.compile("{taken:yyyyMMdd_HHmmss}_{model}_{name}_{width}x{height}_{seq:04}{{}}");
+
+        String name = template.format(metadata("IMG_0001.jpg", LocalDateTime.of(2021, 7, 3, 14, 5, 9), "X100"), 12);
+
+        assertEquals("20210703_140509_X100_IMG_0001_4000x3000_0012{}", name);
+    }
+
+    @Test
+    void replacesCharactersNotAllowedInFileNames() {
+        RenameTemplate template = RenameTemplate.compile("{model}");
+
+        assertEquals("A_B_C", template.format(metadata("a.jpg", LocalDateTime.of(2021, 1, 1, 0, 0), "A/B:C"), 1));
+    }
+
+    @Test
+    void rejectsMalformedTemplates() {
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile(""));
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("{taken"));
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("name}"));
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("{unknown}"));
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("{seq:x}"));
+    }
+
+    @Test
+    void rejectsDatePatternsWhichCannotFormatALocalDateTime() {
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("{taken:z}"));
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("{taken:VV}"));
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("{taken:xxx}"));
+        assertThrows(IllegalArgumentException.class, () -> RenameTemplate.compile("{taken:yyyy-MM-dd O}"));
+    }
+}
@@ -0,0 +1,192 @@
+package de.oppermann.jpgrenamer.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class WatchFolderDaemonTest {
+
+    private static final long QUIET_MILLIS = 50;
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    @TempDir
+    Path temporaryDirectory;
+
+    private final List<RenamePlan.Move> renamed = new CopyOnWriteArrayList<>();
+
+    private final List<Path> failed = new CopyOnWriteArrayList<>();
+
+    @Test
+    void renamesFilesWhichAreInTheDirectoryAtStart() throws Exception {
+        Path directory = temporaryDirectory.resolve("watched");
+        corpus(1).generate(directory, 3);
+
+        WatchFolderDaemon.Metrics metrics;
+        try (RunningDaemon daemon = start(directory, "renamed_{seq:03}")) {
+            await(() -> daemon.getMetrics().renamed() == 3);
+            metrics = daemon.getMetrics();
+        }
+
+        assertEquals(0, metrics.failed());
+        assertEquals(0, metrics.pending());
+        assertEquals(3, renamed.size());
+
+        assertTrue(Files.exists(directory.resolve("renamed_001.jpg")));
+        assertTrue(Files.exists(directory.resolve("renamed_002.jpg")));
+        assertTrue(Files.exists(directory.resolve("renamed_003.jpg")));
+        assertFalse(Files.exists(directory.resolve("IMG_00001.jpg")));
+        assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    void renamesArrivingFiles() throws Exception {
+        Path directory = Files.createDirectories(temporaryDirectory.resolve("watched"));
+        Path upload = temporaryDirectory.resolve("upload");
+        corpus(2).generate(upload, 2);
+
+        WatchFolderDaemon.Metrics metrics;
+        try (RunningDaemon daemon = start(directory, "arrived_{seq:03}")) {
+            Files.move(upload.resolve("IMG_00001.jpg"), directory.resolve("IMG_00001.jpg"));
+            Files.move(upload.resolve("IMG_00002.jpg"), directory.resolve("IMG_00002.jpg"));
+            await(() -> daemon.getMetrics().renamed() == 2);
+            metrics = daemon.getMetrics();
+        }
+
+        assertEquals(2, metrics.arrived());
+        assertEquals(0, metrics.pending());
+        assertEquals(2, renamed.size());
+
+        assertTrue(Files.exists(directory.resolve("arrived_001.jpg")));
+        assertTrue(Files.exists(directory.resolve("arrived_002.jpg")));
+        assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    void reportsConflictsOnce() throws Exception {
+        Path directory = Files.createDirectories(temporaryDirectory.resolve("watched"));
+        Path upload = temporaryDirectory.resolve("upload");
+        corpus(3).generate(upload, 2);
+        // already has its new name, so the initial scan leaves it alone
+        Files.move(upload.resolve("IMG_00001.jpg"), directory.resolve("photo.jpg"));
+
+        Path conflicting = directory.resolve("IMG_00002.jpg");
+        WatchFolderDaemon.Metrics metrics;
+        try (RunningDaemon daemon = start(directory, "photo")) {
+            Files.move(upload.resolve("IMG_00002.jpg"), conflicting);
+            await(() -> daemon.getMetrics().failed() == 1);
+            // a later modification of the conflicting file does not report it again
+            Files.setLastModifiedTime(conflicting, FileTime.from(Instant.now()));
+            Thread.sleep(QUIET_MILLIS * 10);
+            metrics = daemon.getMetrics();
+        }
+
+        assertEquals(1, metrics.failed());
+        assertEquals(0, metrics.renamed());
+        assertEquals(List.of(conflicting.toAbsolutePath()), failed);
+        assertTrue(renamed.isEmpty());
+        assertTrue(Files.exists(conflicting));
+        assertTrue(Files.exists(directory.resolve("photo.jpg")));
+    }
+
+    @Test
+    void usesOneJournalPerDirectory() {
+        Path first = temporaryDirectory.resolve("first");
+        Path second = temporaryDirectory.resolve("second");
+
+        assertNotEquals(WatchFolderDaemon.getJournalPath(first), WatchFolderDaemon.getJournalPath(second));
+        assertEquals(WatchFolderDaemon.getJournalPath(first), WatchFolderDaemon.getJournalPath(second.resolve("..").resolve("first")));
+        assertEquals(RenameJournal.getDefaultPath().getParent(), WatchFolderDaemon.getJournalPath(first).getParent());
+    }
+
+    private static CorpusGenerator corpus(long seed) {
+        return new CorpusGenerator(seed, List.of(new CorpusGenerator.Size(64, 48, 1)));
+    }
+
+    private RunningDaemon start(Path directory, String template) throws Exception {
+        WatchFolderDaemon daemon = new WatchFolderDaemon(directory, RenameTemplate.compile(template), false, new WatchFolderDaemon.Listener() {
+            @Override
+            public void onRenamed(RenamePlan.Move move) {
+                renamed.add(move);
+            }
+
+            @Override
+            public void onFailed(Path file, Exception e) {
+                failed.add(file);
+            }
+        }, QUIET_MILLIS, 16, 64, temporaryDirectory.resolve("watch.journal"));
+        return new RunningDaemon(daemon);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MILLIS);
+        while (!condition.getAsBoolean()) {
+            if(System.nanoTime() > deadline) {
+                fail("The daemon did not finish in time");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Runs a daemon on its own thread until it is closed
+     */
+    private static class RunningDaemon implements AutoCloseable {
+
+        private final WatchFolderDaemon daemon;
+
+        private final Thread thread;
+
+        private volatile Exception exception;
+
+        RunningDaemon(WatchFolderDaemon daemon) {
+            this.daemon = daemon;
+            this.thread = new Thread(() -> {
+                try {
+                    daemon.run();
+                } catch (Exception e) {
+                    exception = e;
+                }
+            }, "watch-folder-daemon-test");
+            this.thread.start();
+        }
+
+        /**
+         * Returns the metrics of the daemon, published after every batch
+         */
+        WatchFolderDaemon.Metrics getMetrics() {
+            return daemon.getMetrics();
+        }
+
+        @Override
+        public void close() throws IOException {
+            daemon.close();
+            try {
+                thread.join(TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the daemon to stop");
+            }
+            assertFalse(thread.isAlive(), "The daemon did not stop");
+            if(exception != null) {
+                fail("The daemon failed", exception);
+            }
+        }
+    }
+}
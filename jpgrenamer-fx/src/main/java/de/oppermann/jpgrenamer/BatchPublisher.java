@@ -0,0 +1,104 @@
+package de.oppermann.jpgrenamer;
+
+import javafx.animation.AnimationTimer;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class publishes items produced by a background thread into an observable list on the UI thread.
+ * The items are collected and added with a single {@link ObservableList#addAll} once per pulse,
+ * so loading many files causes one change of the list per frame instead of one per file.
+ * @param <T> the type of the items
+ */
+public class BatchPublisher<T> {
+
+    private final ObservableList<T> target;
+
+    private final Runnable onPublished;
+
+    /**
+     * The items which have not been added to the list yet
+     */
+    private final ConcurrentLinkedQueue<T> pending = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether no more items will be published. The timer stops after adding the remaining items.
+     */
+    private volatile boolean finished;
+
+    /**
+     * Whether the pending items are discarded
+     */
+    private volatile boolean cancelled;
+
+    private final AnimationTimer timer = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            flush();
+        }
+    };
+
+    /**
+     * Creates a new publisher and starts adding the published items on every pulse. Has to be called on the UI thread.
+     * @param target the list the items are added to
+     * @param onPublished called on the UI thread after items have been added
+     */
+    public BatchPublisher(ObservableList<T> target, Runnable onPublished) {
+        this.target = target;
+        this.onPublished = onPublished;
+        this.timer.start();
+    }
+
+    /**
+     * Publishes an item, which is added to the list on the next pulse. May be called from any thread.
+     * @param item the item
+     */
+    public void publish(T item) {
+        if(!cancelled) {
+            pending.add(item);
+        }
+    }
+
+    /**
+     * Marks that no more items will be published. The remaining items are added on the next pulse. May be called from any thread.
+     */
+    public void finish() {
+        finished = true;
+    }
+
+    /**
+     * Discards the pending items and stops publishing. Has to be called on the UI thread.
+     */
+    public void cancel() {
+        cancelled = true;
+        timer.stop();
+        pending.clear();
+    }
+
+    /**
+     * Adds the pending items to the list
+     */
+    private void flush() {
+        if(cancelled) {
+            timer.stop();
+            return;
+        }
+        // read before draining, so no item published before finishing is left behind
+        boolean done = finished;
+        List<T> batch = new ArrayList<>();
+        T item;
+        while ((item = pending.poll()) != null) {
+            batch.add(item);
+        }
+        if(!batch.isEmpty()) {
+            target.addAll(batch);
+            onPublished.run();
+        }
+        if(done) {
+            timer.stop();
+        }
+    }
+}
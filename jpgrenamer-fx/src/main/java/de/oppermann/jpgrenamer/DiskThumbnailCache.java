@@ -0,0 +1,450 @@
+package de.oppermann.jpgrenamer;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * This class stores generated thumbnails on disk, so they are shared across sessions and directories.
+ * The thumbnails are keyed by a fingerprint of the file content, so they stay valid when a file is renamed or moved.
+ * The fingerprints are remembered by path, size and modification time, so a file is only read again when it has changed.
+ * <p>
+ * The thumbnails are appended as JPG to a pack file, each preceded by its fingerprint. For every thumbnail, a fixed-size record
+ * (fingerprint, offset, length) is appended to an index file, which is read into memory when the cache is opened.
+ * A thumbnail is only used if the fingerprint in the pack file matches, so an index which does not belong to the pack file
+ * (e.g. after a crash while compacting) cannot show the thumbnail of another file.
+ * A later record of a fingerprint replaces the earlier ones, e.g. when a thumbnail which cannot be decoded has been generated again.
+ * When the pack file grows beyond the budget, it is compacted to the most recently added thumbnails.
+ */
+public class DiskThumbnailCache {
+
+    /**
+     * The system property used to configure the directory the cache is stored in
+     */
+    public static final String DIRECTORY_PROPERTY = "jpgrenamer.thumbnails.dir";
+
+    /**
+     * The system property used to configure the maximum size of the pack file (bytes)
+     */
+    public static final String BUDGET_PROPERTY = "jpgrenamer.thumbnails.diskBytes";
+
+    private static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    private static final String PACK_FILE = "thumbnails.pack";
+
+    private static final String INDEX_FILE = "thumbnails.idx";
+
+    private static final int FINGERPRINT_LENGTH = 16;
+
+    private static final int INDEX_RECORD_LENGTH = FINGERPRINT_LENGTH + 8 + 4;
+
+    /**
+     * The number of bytes read from the start and the end of a file to calculate its fingerprint
+     */
+    private static final int FINGERPRINT_SAMPLE_LENGTH = 64 * 1024;
+
+    /**
+     * The maximum number of remembered fingerprints
+     */
+    private static final int MAX_KNOWN_FILES = 64 * 1024;
+
+    private static volatile DiskThumbnailCache defaultCache;
+
+    //region fields
+    private final Path directory;
+
+    private final long budget;
+
+    private FileChannel pack;
+
+    private FileChannel index;
+
+    /**
+     * The location of the thumbnails in the pack file by fingerprint
+     */
+    private final Map<Fingerprint, Location> locations = new HashMap<>();
+
+    /**
+     * The fingerprints of the files looked up before by path, least recently used first
+     */
+    private final Map<Path, KnownFile> knownFiles = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, KnownFile> eldest) {
+            return size() > MAX_KNOWN_FILES;
+        }
+    });
+    //endregion
+
+    /**
+     * Opens the cache in the given directory
+     * @param directory the directory containing the pack and the index file
+     * @param budget the maximum size of the pack file (bytes)
+     * @throws IOException if the files cannot be opened
+     */
+    public DiskThumbnailCache(Path directory, long budget) throws IOException {
+        this.directory = directory;
+        this.budget = budget;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    /**
+     * Returns the cache used for the thumbnails of the JpgFiles
+     * @return the default cache, or null, if the cache directory cannot be used
+     */
+    public static DiskThumbnailCache getDefault() {
+        if(defaultCache == null) {
+            synchronized (DiskThumbnailCache.class) {
+                if(defaultCache == null) {
+                    String cacheDirectory = System.getProperty(DIRECTORY_PROPERTY);
+                    Path path = cacheDirectory != null
+                            ? Path.of(cacheDirectory)
+                            : Path.of(System.getProperty("user.home"), ".jpgrenamer", "thumbnails");
+                    try {
+                        defaultCache = new DiskThumbnailCache(path, Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET));
+                    } catch (IOException e) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return defaultCache;
+    }
+
+    //region reading and writing
+
+    /**
+     * Returns the cached thumbnail of the file. On a miss, the thumbnail is created by the generator and added to the cache.
+     * @param file the image file
+     * @param generator creates the thumbnail on a miss, may return null
+     * @return the thumbnail, or null, if the generator returns null
+     */
+    public BufferedImage get(File file, Supplier<BufferedImage> generator) {
+        Fingerprint fingerprint;
+        try {
+            fingerprint = lookUpFingerprint(file);
+        } catch (IOException e) {
+            return generator.get();
+        }
+
+        byte[] data = read(fingerprint);
+        BufferedImage thumbnail = data != null ? JpgFile.getThumbnail(data) : null;
+        if(thumbnail != null) {
+            return thumbnail;
+        }
+        if(data != null) {
+            // the broken thumbnail is replaced by the generated one
+            forget(fingerprint);
+        }
+
+        thumbnail = generator.get();
+        if(thumbnail != null) {
+            data = encode(thumbnail);
+            if(data != null) {
+                write(fingerprint, data);
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Returns the fingerprint of the file. It is only calculated if the file has not been looked up before
+     * or its size or modification time has changed since.
+     * @param file the image file
+     * @return the fingerprint
+     * @throws IOException if the file cannot be read
+     */
+    private Fingerprint lookUpFingerprint(File file) throws IOException {
+        Path path = file.toPath().toAbsolutePath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        KnownFile known = knownFiles.get(path);
+        if(known != null && known.size() == size && known.modified() == modified) {
+            return known.fingerprint();
+        }
+        Fingerprint fingerprint = fingerprint(file);
+        knownFiles.put(path, new KnownFile(size, modified, fingerprint));
+        return fingerprint;
+    }
+
+    /**
+     * Reads the encoded thumbnail from the pack file
+     * @param fingerprint the fingerprint of the image file
+     * @return the encoded thumbnail, or null, if it is not cached or cannot be read.
+     * A thumbnail which cannot be read or is stored with another fingerprint is removed.
+     */
+    private synchronized byte[] read(Fingerprint fingerprint) {
+        Location location = locations.get(fingerprint);
+        if(location == null) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_LENGTH + location.length());
+            while (buffer.hasRemaining()) {
+                if(pack.read(buffer, location.offset() + buffer.position()) < 0) {
+                    locations.remove(fingerprint);
+                    return null;
+                }
+            }
+            if(!Arrays.equals(buffer.array(), 0, FINGERPRINT_LENGTH, fingerprint.bytes(), 0, FINGERPRINT_LENGTH)) {
+                locations.remove(fingerprint);
+                return null;
+            }
+            return Arrays.copyOfRange(buffer.array(), FINGERPRINT_LENGTH, buffer.capacity());
+        } catch (IOException e) {
+            locations.remove(fingerprint);
+            return null;
+        }
+    }
+
+    /**
+     * Appends the encoded thumbnail to the pack file and its location to the index file.
+     * Compacts the pack file if it exceeds the budget.
+     * @param fingerprint the fingerprint of the image file
+     * @param data the encoded thumbnail
+     */
+    private synchronized void write(Fingerprint fingerprint, byte[] data) {
+        if(locations.containsKey(fingerprint)) {
+            return;
+        }
+        try {
+            long offset = pack.size();
+            ByteBuffer entry = ByteBuffer.allocate(FINGERPRINT_LENGTH + data.length);
+            entry.put(fingerprint.bytes()).put(data).flip();
+            while (entry.hasRemaining()) {
+                pack.write(entry, offset + entry.position());
+            }
+            ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_LENGTH);
+            record.put(fingerprint.bytes()).putLong(offset).putInt(data.length).flip();
+            index.write(record, index.size());
+            locations.put(fingerprint, new Location(offset, data.length));
+            if(pack.size() > budget) {
+                compact();
+            }
+        } catch (IOException e) {
+            // the cache only saves work, a thumbnail which cannot be stored is generated again next time
+        }
+    }
+
+    /**
+     * Removes the location of a thumbnail, so it can be written again
+     * @param fingerprint the fingerprint of the image file
+     */
+    private synchronized void forget(Fingerprint fingerprint) {
+        locations.remove(fingerprint);
+    }
+
+    //endregion
+
+    //region files
+
+    /**
+     * Opens the pack and the index file and reads the index into memory.
+     * Index records pointing beyond the end of the pack file are ignored.
+     * @throws IOException if the files cannot be opened
+     */
+    private void open() throws IOException {
+        pack = FileChannel.open(directory.resolve(PACK_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        locations.clear();
+
+        long packSize = pack.size();
+        long indexSize = index.size() - index.size() % INDEX_RECORD_LENGTH;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(indexSize, Integer.MAX_VALUE - 8));
+        readFully(index, buffer, 0);
+        buffer.flip();
+        while (buffer.remaining() >= INDEX_RECORD_LENGTH) {
+            byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+            buffer.get(fingerprint);
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            if(offset >= 0 && length > 0 && offset + FINGERPRINT_LENGTH + length <= packSize) {
+                locations.put(new Fingerprint(fingerprint), new Location(offset, length));
+            }
+        }
+    }
+
+    /**
+     * Rewrites the pack and the index file, keeping the most recently added thumbnails up to half of the budget
+     * @throws IOException if the files cannot be written
+     */
+    private void compact() throws IOException {
+        List<Map.Entry<Fingerprint, Location>> entries = new ArrayList<>(locations.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<Fingerprint, Location> entry) -> entry.getValue().offset()).reversed());
+
+        Path packFile = directory.resolve(PACK_FILE);
+        Path indexFile = directory.resolve(INDEX_FILE);
+        Path temporaryPack = directory.resolve(PACK_FILE + ".tmp");
+        Path temporaryIndex = directory.resolve(INDEX_FILE + ".tmp");
+        try (FileChannel newPack = FileChannel.open(temporaryPack, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel newIndex = FileChannel.open(temporaryIndex, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long size = 0;
+            for (Map.Entry<Fingerprint, Location> entry : entries) {
+                Location location = entry.getValue();
+                int entryLength = FINGERPRINT_LENGTH + location.length();
+                if(size + entryLength > budget / 2) {
+                    break;
+                }
+                pack.transferTo(location.offset(), entryLength, newPack);
+                ByteBuffer record = ByteBuffer.allocate(INDEX_RECORD_LENGTH);
+                record.put(entry.getKey().bytes()).putLong(size).putInt(location.length()).flip();
+                newIndex.write(record);
+                size += entryLength;
+            }
+        }
+        pack.close();
+        index.close();
+        move(temporaryPack, packFile);
+        move(temporaryIndex, indexFile);
+        open();
+    }
+
+    /**
+     * Replaces the target file by the source file
+     * @param source the source file
+     * @param target the target file
+     * @throws IOException if the file cannot be moved
+     */
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    //endregion
+
+    //region encoding
+
+    /**
+     * Calculates the fingerprint of the file content from its size and the first and last bytes of the file.
+     * The EXIF data at the start of a JPG file makes the fingerprint unique in practice without reading the whole file.
+     * @param file the image file
+     * @return the fingerprint
+     * @throws IOException if the file cannot be read
+     */
+    private static Fingerprint fingerprint(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            digest.update(ByteBuffer.allocate(8).putLong(size).flip());
+            ByteBuffer buffer = ByteBuffer.allocate(FINGERPRINT_SAMPLE_LENGTH);
+            readFully(channel, buffer, 0);
+            digest.update(buffer.flip());
+            if(size > FINGERPRINT_SAMPLE_LENGTH) {
+                buffer.clear();
+                readFully(channel, buffer, Math.max(FINGERPRINT_SAMPLE_LENGTH, size - FINGERPRINT_SAMPLE_LENGTH));
+                digest.update(buffer.flip());
+            }
+        }
+        byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+        System.arraycopy(digest.digest(), 0, fingerprint, 0, FINGERPRINT_LENGTH);
+        return new Fingerprint(fingerprint);
+    }
+
+    /**
+     * Reads from the channel until the buffer is full or the end of the channel is reached
+     * @param channel the channel
+     * @param buffer the buffer
+     * @param position the position to start reading at
+     * @throws IOException if the channel cannot be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if(read < 0) {
+                return;
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Encodes the thumbnail as JPG
+     * @param thumbnail the thumbnail
+     * @return the encoded thumbnail, or null, if it cannot be encoded
+     */
+    private static byte[] encode(BufferedImage thumbnail) {
+        BufferedImage rgb = thumbnail;
+        if(thumbnail.getType() != BufferedImage.TYPE_INT_RGB) {
+            rgb = new BufferedImage(thumbnail.getWidth(), thumbnail.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = rgb.createGraphics();
+            try {
+                graphics.drawImage(thumbnail, 0, 0, null);
+            } finally {
+                graphics.dispose();
+            }
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8 * 1024);
+            return ImageIO.write(rgb, "jpg", out) ? out.toByteArray() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //endregion
+
+    /**
+     * The fingerprint of a file content
+     * @param bytes the truncated hash of the content
+     */
+    private record Fingerprint(byte[] bytes) {
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Fingerprint fingerprint && Arrays.equals(bytes, fingerprint.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+
+    /**
+     * A file whose fingerprint has been calculated
+     * @param size the size of the file (bytes)
+     * @param modified the modification time of the file (ms since epoch)
+     * @param fingerprint the fingerprint of the file content
+     */
+    private record KnownFile(long size, long modified, Fingerprint fingerprint) {
+    }
+
+    /**
+     * The location of an encoded thumbnail in the pack file
+     * @param offset the position of the fingerprint preceding the thumbnail in the pack file
+     * @param length the length of the thumbnail (bytes)
+     */
+    private record Location(long offset, int length) {
+    }
+}
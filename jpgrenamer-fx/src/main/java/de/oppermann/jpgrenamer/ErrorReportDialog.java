@@ -0,0 +1,163 @@
+package de.oppermann.jpgrenamer;
+
+import de.oppermann.jpgrenamer.core.ErrorCollector;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.transformation.FilteredList;
+import javafx.geometry.Insets;
+import javafx.scene.control.Alert;
+import javafx.scene.control.Button;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
+import javafx.util.StringConverter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.function.Function;
+
+/**
+ * This dialog shows the failures collected by an {@link ErrorCollector}: the number of failures per phase
+ * and the list of failures, which can be filtered by phase and text and exported as CSV.
+ */
+public class ErrorReportDialog extends Dialog<Void> {
+
+    private final ErrorCollector errors;
+
+    private final FilteredList<ErrorCollector.Failure> failures;
+
+    private final ChoiceBox<ErrorCollector.Phase> phaseChoiceBox = new ChoiceBox<>();
+
+    private final TextField filterTextField = new TextField();
+
+    private final Label shownLabel = new Label();
+
+    /**
+     * Creates a new dialog showing the failures collected so far
+     * @param errors the collected failures
+     */
+    public ErrorReportDialog(ErrorCollector errors) {
+        this.errors = errors;
+        this.failures = new FilteredList<>(FXCollections.observableArrayList(errors.getFailures()));
+
+        setTitle("Errors");
+        setHeaderText(errors.toString());
+        setResizable(true);
+
+        // null shows the failures of all phases
+        phaseChoiceBox.getItems().add(null);
+        phaseChoiceBox.getItems().addAll(ErrorCollector.Phase.values());
+        phaseChoiceBox.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(ErrorCollector.Phase phase) {
+                return phase == null ? "All phases" : String.format("%s (%d)", phase.name().toLowerCase(Locale.ROOT), errors.getCount(phase));
+            }
+
+            @Override
+            public ErrorCollector.Phase fromString(String string) {
+                // the displayed name of a phase contains its count, so it is looked up among the shown phases
+                for (ErrorCollector.Phase phase : ErrorCollector.Phase.values()) {
+                    if(toString(phase).equals(string)) {
+                        return phase;
+                    }
+                }
+                return null;
+            }
+        });
+        phaseChoiceBox.getSelectionModel().select(0);
+        phaseChoiceBox.valueProperty().addListener((obs, oldPhase, newPhase) -> updateFilter());
+
+        filterTextField.setPromptText("Filter by path, exception or message");
+        filterTextField.textProperty().addListener((obs, oldText, newText) -> updateFilter());
+        HBox.setHgrow(filterTextField, Priority.ALWAYS);
+
+        Button exportButton = new Button("Export CSV...");
+        exportButton.setOnAction(event -> export());
+
+        HBox filterBox = new HBox(5, phaseChoiceBox, filterTextField, exportButton);
+
+        TableView<ErrorCollector.Failure> failureTable = new TableView<>(failures);
+        failureTable.getColumns().add(column("Phase", 80, failure -> failure.phase().name().toLowerCase(Locale.ROOT)));
+        failureTable.getColumns().add(column("File", 300, failure -> failure.path().toString()));
+        failureTable.getColumns().add(column("Exception", 150, failure -> simpleName(failure.exceptionClass())));
+        failureTable.getColumns().add(column("Message", 300, ErrorCollector.Failure::message));
+        failureTable.setPrefSize(850, 400);
+        VBox.setVgrow(failureTable, Priority.ALWAYS);
+
+        VBox content = new VBox(5, filterBox, failureTable, shownLabel);
+        content.setPadding(new Insets(5));
+        getDialogPane().setContent(content);
+        getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        updateFilter();
+    }
+
+    /**
+     * Creates a read-only text column
+     * @param title the title of the column
+     * @param width the preferred width of the column
+     * @param text returns the text of a failure
+     * @return the column
+     */
+    private static TableColumn<ErrorCollector.Failure, String> column(String title, double width, Function<ErrorCollector.Failure, String> text) {
+        TableColumn<ErrorCollector.Failure, String> column = new TableColumn<>(title);
+        column.setCellValueFactory(failure -> new ReadOnlyStringWrapper(text.apply(failure.getValue())));
+        column.setPrefWidth(width);
+        return column;
+    }
+
+    /**
+     * Returns the name of a class without its package
+     * @param className the fully qualified name of the class
+     * @return the simple name
+     */
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Shows the failures of the selected phase which contain the filter text
+     */
+    private void updateFilter() {
+        ErrorCollector.Phase phase = phaseChoiceBox.getValue();
+        String filter = filterTextField.getText().toLowerCase(Locale.ROOT);
+        failures.setPredicate(failure -> (phase == null || failure.phase() == phase)
+                && (filter.isEmpty()
+                    || failure.path().toString().toLowerCase(Locale.ROOT).contains(filter)
+                    || failure.exceptionClass().toLowerCase(Locale.ROOT).contains(filter)
+                    || failure.message().toLowerCase(Locale.ROOT).contains(filter)));
+        shownLabel.setText(String.format("Showing %d of %d errors", failures.size(), errors.getCount()));
+    }
+
+    /**
+     * Asks for a file and exports all collected failures to it as CSV
+     */
+    private void export() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export errors");
+        fileChooser.setInitialFileName("errors.csv");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV files", "*.csv"));
+        File file = fileChooser.showSaveDialog(getDialogPane().getScene().getWindow());
+        if(file == null) {
+            return;
+        }
+        try {
+            errors.exportCsv(file.toPath());
+        } catch (IOException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Export failed");
+            alert.setHeaderText("Exporting the errors failed");
+            alert.setContentText(String.format("Writing the file \"%s\" failed: %s", file.getAbsolutePath(), e.getMessage()));
+            alert.showAndWait();
+        }
+    }
+}
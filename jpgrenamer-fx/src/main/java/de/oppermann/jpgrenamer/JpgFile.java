@@ -0,0 +1,435 @@
+package de.oppermann.jpgrenamer;
+
+import de.oppermann.jpgrenamer.core.JpgFileLoader;
+import de.oppermann.jpgrenamer.core.JpgMetadata;
+import de.oppermann.jpgrenamer.core.RenamePlan;
+import de.oppermann.jpgrenamer.core.RenamePlanner;
+import de.oppermann.jpgrenamer.core.RenameTemplate;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import org.apache.commons.imaging.ImageReadException;
+import org.apache.commons.imaging.Imaging;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * This class maintains information about a JPG image file.
+ * It contains the methods to load data from the image metadata
+ * and to rename the file in the filesystem
+ */
+public class JpgFile {
+
+    //region fields
+    private File imageFile;
+
+    private File renamedImageFile;
+
+    /**
+     * The metadata read from the image file
+     */
+    private final JpgMetadata metadata;
+
+    private final ReadOnlyStringWrapper currentName = new ReadOnlyStringWrapper(this, "currentName");
+
+    private final StringProperty newName = new SimpleStringProperty(this, "newName");
+
+    private static final int THUMBNAIL_WIDTH = 150;
+
+    //endregion
+
+    /**
+     * Creates a new JpgFile and populates the fields by loading the image file's metadata
+     * @param imageFile the file in the filesystem
+     * @throws IOException if the file does not exist or cannot be opened
+     * @throws ImageReadException if the image cannot be loaded from the file
+     */
+    public JpgFile(File imageFile) throws IOException, ImageReadException {
+        this(JpgMetadata.read(imageFile));
+    }
+
+    /**
+     * Creates a new JpgFile from metadata that has been loaded before (e.g. by a {@link JpgFileLoader}),
+     * without reading the image file
+     * @param metadata the metadata of the image file
+     */
+    public JpgFile(JpgMetadata metadata) {
+        this.metadata = metadata;
+        this.initializeProperties();
+
+        this.setImageFile(metadata.getFile());
+
+        this.suggestNewName();
+    }
+
+    /**
+     * Registers the listener that keeps the renamed file in sync with the new name property
+     */
+    private void initializeProperties() {
+        this.newName.addListener((observableValue, oldValue, newValue) -> {
+            if(newValue == null || newValue.equals(oldValue)) {
+                return;
+            }
+            setNewName(newValue);
+        });
+    }
+
+    /**
+     * Calculates the suggested name from the date taken
+     */
+    private void suggestNewName() {
+        this.applyTemplate(RenameTemplate.DEFAULT, 1, new StringBuilder(32));
+    }
+
+    /**
+     * Sets the new name to the name formatted by the template
+     * @param template the template
+     * @param sequence the position of the file in the list, starting at 1
+     * @param buffer the buffer used for formatting, so it can be reused for many files
+     */
+    public void applyTemplate(RenameTemplate template, int sequence, StringBuilder buffer) {
+        template.formatTo(this.metadata, this.imageFile.getName(), sequence, buffer);
+        this.newName.setValue(buffer.toString());
+    }
+
+    //region getters and setters
+
+    /**
+     * Returns the date the image was taken
+     * @return the date the image was taken
+     */
+    public Date getTaken() {
+        return this.metadata.getTaken();
+    }
+
+    /**
+     * Returns the date the image was taken in the local time zone
+     * @return the date the image was taken
+     */
+    public LocalDateTime getTakenDateTime() {
+        return this.metadata.getTakenDateTime();
+    }
+
+    /**
+     * Returns the camera model
+     * @return the camera model, or an empty String if it is unknown
+     */
+    public String getModel() {
+        return this.metadata.getModel();
+    }
+
+    /**
+     * Returns the metadata read from the image file
+     * @return the metadata
+     */
+    public JpgMetadata getMetadata() {
+        return this.metadata;
+    }
+
+    /**
+     * Returns the StringProperty for the new name.
+     * The UI components can bind to this StringProperty
+     * @return the StringProperty
+     */
+    public StringProperty newNameProperty() {
+        return newName;
+    }
+
+    /**
+     * Returns the width of the image
+     * @return the width (pixels), or -1 if unknown
+     */
+    public int getWidth() {
+        return this.metadata.getWidth();
+    }
+
+    /**
+     * Returns the height of the image
+     * @return the height (pixels), or -1 if unknown
+     */
+    public int getHeight() {
+        return this.metadata.getHeight();
+    }
+
+    /**
+     * Returns the image file
+     * @return the image file
+     */
+    public File getImageFile() {
+        return imageFile;
+    }
+
+    /**
+     * Returns the resolution of the image
+     * @return String representation of the resolution (width x height)
+     */
+    public String getResolution() {
+        if(this.getHeight() < 0 || this.getWidth() < 0) {
+            return "n/a";
+        }
+        return String.format("%d x %d", this.getWidth(), this.getHeight());
+    }
+
+    /**
+     * Returns the current name of the file
+     * @return The current name of the file
+     */
+    public String getCurrentName() {
+        return this.currentName.getValue();
+    }
+
+    /**
+     * Returns the read only StringProperty containing the current name of the file.
+     * UI components can bind to the property to be notified of changes (e.g. after rename has been executed)
+     * @return the read-only String property
+     */
+    public ReadOnlyStringProperty currentNameProperty() {
+        return this.currentName.getReadOnlyProperty();
+    }
+
+    /**
+     * Sets the current name
+     * @param name the current name
+     */
+    private void setCurrentName(String name) {
+        this.currentName.setValue(name);
+    }
+
+    /**
+     * Sets the image file
+     * @param imageFile the image file
+     */
+    private void setImageFile(File imageFile) {
+        this.imageFile = imageFile;
+        this.setCurrentName(imageFile.getName());
+    }
+
+    /**
+     * Sets the new name
+     * @param newName the new name to set
+     */
+    private void setNewName(String newName) {
+        if(!newName.endsWith(".jpg")) {
+            newName += ".jpg";
+            this.newName.setValue(newName);
+            return;
+        }
+        renamedImageFile = new File(imageFile.getParentFile(), this.newName.getValue());
+    }
+
+    /**
+     * Returns the thumbnail image of the image file. The thumbnail is taken from the {@link ThumbnailCache}
+     * and is decoded if it is not cached, which may require decoding the whole image,
+     * so this method should not be called on the UI thread.
+     * @return the thumbnail, or null, if no image data is available
+     */
+    public BufferedImage getThumbnail() {
+        return ThumbnailCache.getDefault().get(this, this::readThumbnail);
+    }
+
+    /**
+     * Reads the encoded thumbnail embedded in the EXIF data from the image file
+     * @return the encoded thumbnail, or null, if the file does not contain a thumbnail or cannot be read
+     */
+    byte[] getThumbnailData() {
+        try {
+            return this.metadata.readThumbnailData(this.imageFile);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //endregion
+
+    //region metadata
+
+    /**
+     * Reads the thumbnail of the image from the embedded EXIF thumbnail.
+     * If no embedded thumbnail is available, the image is scaled and returned.
+     * Scaled thumbnails are stored in the {@link DiskThumbnailCache}, so they are only created once.
+     * @return A buffered image containing the thumbnail, or null, if no image data is available.
+     */
+    private BufferedImage readThumbnail() {
+        byte[] thumbnailData = this.getThumbnailData();
+        BufferedImage thumbnail = thumbnailData != null? getThumbnail(thumbnailData) : null;
+        if(thumbnail == null) {
+            DiskThumbnailCache diskCache = DiskThumbnailCache.getDefault();
+            thumbnail = diskCache != null
+                    ? diskCache.get(this.imageFile, () -> getThumbnail(this.getWidth(), this.getHeight()))
+                    : getThumbnail(this.getWidth(), this.getHeight());
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Decodes an encoded thumbnail, e.g. the thumbnail embedded in the EXIF data
+     * @param thumbnailData The encoded thumbnail bytes
+     * @return The thumbnail, or null, if the data cannot be decoded
+     */
+    static BufferedImage getThumbnail(byte[] thumbnailData){
+        try {
+            return Imaging.getBufferedImage(thumbnailData);
+        } catch (ImageReadException | IOException e) {
+            try {
+                return ImageIO.read(new ByteArrayInputStream(thumbnailData));
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Creates a thumbnail from the image file by scaling it.
+     * The image is decoded with source subsampling, so only about twice the pixels of the thumbnail are kept in memory.
+     * @param imageWidth The width of the image (pixels)
+     * @param imageHeight The height of the image (pixels)
+     * @return A scaled down version of the picture with a width of 150 px
+     */
+    private BufferedImage getThumbnail(int imageWidth, int imageHeight) {
+        int width = THUMBNAIL_WIDTH;
+        double factor = imageWidth / (double) width;
+        int height = (int) (imageHeight / factor);
+        if(height <= 0) {
+            return null;
+        }
+
+        // keep at least twice the target resolution, so the final scaling can smooth the image
+        int subsampling = Math.max(1, imageWidth / (width * 2));
+        BufferedImage originalImage;
+        try {
+            originalImage = readSubsampled(subsampling);
+        } catch (IOException e) {
+            originalImage = null;
+        }
+        if(originalImage == null) {
+            // e.g. CMYK images, which cannot be read by ImageIO
+            try {
+                originalImage = Imaging.getBufferedImage(this.imageFile);
+            } catch (ImageReadException | IOException e) {
+                return null;
+            }
+        }
+
+        BufferedImage buffered = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = buffered.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(originalImage, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return buffered;
+    }
+
+    /**
+     * Decodes the image file at a reduced resolution by only reading every n-th pixel of every n-th row
+     * @param subsampling The subsampling factor n
+     * @return The decoded image, or null, if no reader is available for the file
+     * @throws IOException if the file cannot be read
+     */
+    private BufferedImage readSubsampled(int subsampling) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(this.imageFile)) {
+            if(input == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if(!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    //endregion
+    //region renaming
+
+    /**
+     * Returns the rename of this file to the new name, to be planned by a {@link RenamePlanner}
+     * @return the rename request
+     */
+    RenamePlanner.Request toRenameRequest() {
+        return new RenamePlanner.Request(this.imageFile.toPath(), this.renamedImageFile.getName());
+    }
+
+    /**
+     * Updates the file after it has been moved, without updating the properties.
+     * Afterwards, {@link #publishRename()} has to be called on the UI thread.
+     * @param target the new path of the file
+     */
+    void setMoved(Path target) {
+        this.imageFile = target.toFile();
+        this.renamedImageFile = this.imageFile;
+    }
+
+    /**
+     * Renames the file to the given new name
+     * @throws IOException if the file cannot be renamed
+     */
+    protected void renameFile() throws IOException {
+        this.renameFile(false);
+    }
+
+    /**
+     * Renames the file to the given new name. Optionally resolves naming conflicts
+     * @param resolveConflict determines, whether conflicts should be resolved
+     * @throws IOException if the file cannot be renamed
+     */
+    protected void renameFile(boolean resolveConflict) throws IOException {
+        if(this.moveFile(resolveConflict)) {
+            this.publishRename();
+        }
+    }
+
+    /**
+     * Moves the file to the new name without updating the properties, so it can be called from a background thread.
+     * Afterwards, {@link #publishRename()} has to be called on the UI thread.
+     * @param resolveConflict determines, whether conflicts should be resolved
+     * @return true, if the file has been moved
+     * @throws IOException if the file cannot be renamed
+     */
+    boolean moveFile(boolean resolveConflict) throws IOException {
+        RenamePlan plan = new RenamePlanner(resolveConflict).plan(List.of(this.toRenameRequest()));
+        if(!plan.getConflicts().isEmpty()) {
+            throw new IOException(String.format("The file at \"%s\" already exists.", this.renamedImageFile.getAbsolutePath()));
+        }
+        if(plan.getMoves().isEmpty()) {
+            return false;
+        }
+        RenamePlan.Move move = plan.getMoves().get(0);
+        Files.move(move.source(), move.target());
+        this.setMoved(move.target());
+        return true;
+    }
+
+    /**
+     * Updates the current name and the new name property after the file has been moved by {@link #moveFile(boolean)} or {@link #setMoved(Path)}
+     */
+    void publishRename() {
+        this.setCurrentName(this.imageFile.getName());
+        this.newName.setValue(this.imageFile.getName());
+    }
+    //endregion
+}
@@ -0,0 +1,674 @@
+package de.oppermann.jpgrenamer;
+
+import de.oppermann.jpgrenamer.core.DirectoryWalker;
+import de.oppermann.jpgrenamer.core.ErrorCollector;
+import de.oppermann.jpgrenamer.core.JpgFileLoader;
+import de.oppermann.jpgrenamer.core.MetadataIndex;
+import de.oppermann.jpgrenamer.core.RenameExecutor;
+import de.oppermann.jpgrenamer.core.RenameHistory;
+import de.oppermann.jpgrenamer.core.RenameJournal;
+import de.oppermann.jpgrenamer.core.RenamePlan;
+import de.oppermann.jpgrenamer.core.RenameTemplate;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
+import javafx.fxml.FXML;
+import javafx.scene.control.*;
+import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.scene.control.cell.TextFieldTableCell;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.stage.DirectoryChooser;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class contains the controller code of the JpgRenamer UI
+ */
+public class JpgRenamerController {
+
+    //region UI fields
+    @FXML
+    private TextField directoryTextField, newNameTextField, templateTextField;
+
+    @FXML
+    private TableView<JpgFile> fileTable;
+
+    @FXML
+    private CheckBox fixConflictsCheckbox, recursiveCheckbox;
+
+    @FXML
+    private Button prevButton, renameButton, nextButton, renameAllButton, cancelButton, undoButton, redoButton, errorsButton;
+
+    @FXML
+    private ProgressBar progressBar;
+
+    @FXML
+    private ImageView thumbnailImageView;
+
+    @FXML
+    private TableColumn<JpgFile, String> currentNameColumn, newNameColumn, dateTakenColumn, resolutionColumn;
+
+    @FXML
+    private Label currentNameLabel, dateTakenLabel, resolutionLabel, statusLabel;
+    //endregion UI fields
+
+    /**
+     * Contains the JpgFiles loaded from the opened directory
+      */
+    private ObservableList<JpgFile> fileList;
+
+    /**
+     * Loads the JpgFiles of the opened directory in parallel
+     */
+    private final JpgFileLoader loader = new JpgFileLoader();
+
+    /**
+     * Enumerates the JPG files of the opened directory and, if selected, of its subdirectories
+     */
+    private final DirectoryWalker walker = new DirectoryWalker();
+
+    /**
+     * Adds the JpgFiles of the directory being loaded to the file list, or null
+     */
+    private BatchPublisher<JpgFile> rowPublisher;
+
+    /**
+     * The thread loading the opened directory, or null
+     */
+    private Thread loadThread;
+
+    /**
+     * Counts the loads of directories. Results of a load are dropped if another directory has been opened since it started.
+     */
+    private volatile long loadGeneration;
+
+    /**
+     * The files of the opened directory which could not be listed, loaded or renamed
+     */
+    private final ErrorCollector errors = new ErrorCollector();
+
+    /**
+     * Whether updating the errors button has been scheduled on the UI thread
+     */
+    private final AtomicBoolean errorUpdateScheduled = new AtomicBoolean();
+
+    /**
+     * Loads the thumbnails in the background, one at a time
+     */
+    private final ExecutorService thumbnailExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thumbnail-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The JpgFile whose thumbnail should be displayed. Pending loads of other thumbnails are skipped.
+     */
+    private volatile JpgFile thumbnailRequest;
+
+    /**
+     * The running background task which shows its progress in the status bar, or null
+     */
+    private Task<?> runningTask;
+
+    /**
+     * Shows the statistics of the thumbnail cache
+     */
+    private final Tooltip thumbnailTooltip = new Tooltip();
+
+    /**
+     * The executed rename batches, which can be undone and redone
+     */
+    private final RenameHistory history = new RenameHistory();
+
+    /**
+     * The template used for the suggested names. Read by the loading thread.
+     */
+    private volatile RenameTemplate template = RenameTemplate.DEFAULT;
+
+    /**
+     * Initializes the UI
+     */
+    @FXML
+    private void initialize() {
+        fileList = FXCollections.observableArrayList();
+        currentNameColumn.setCellValueFactory(jpgFile -> jpgFile.getValue().currentNameProperty());
+        newNameColumn.setCellValueFactory(jpgFile -> jpgFile.getValue().newNameProperty());
+        dateTakenColumn.setCellValueFactory(new PropertyValueFactory<>("taken"));
+        resolutionColumn.setCellValueFactory(new PropertyValueFactory<>("resolution"));
+
+        newNameColumn.setCellFactory(TextFieldTableCell.forTableColumn());
+
+        newNameColumn.setEditable(true);
+
+        fileTable.setEditable(true);
+
+        fileTable.setItems(this.fileList);
+
+        fileTable.getSelectionModel().selectedItemProperty().addListener((obs, oldSelection, newSelection) -> {
+            onSelectionChanged(oldSelection, newSelection);
+        });
+
+        // show the statistics of the thumbnail cache, so its budget can be tuned
+        Tooltip.install(thumbnailImageView, thumbnailTooltip);
+
+        templateTextField.setText(RenameTemplate.DEFAULT.toString());
+
+        Platform.runLater(this::recoverRenameJournal);
+    }
+
+    /**
+     * Asks the user whether a rename batch interrupted by a crash should be completed or rolled back,
+     * and recovers it in the background. If the user decides later, the journal is kept and the question is asked again
+     * before the next rename, because a new batch would overwrite the journal.
+     * @return true, if there is no interrupted batch and files may be renamed
+     */
+    private boolean recoverRenameJournal() {
+        RenameJournal.Recovery recovery;
+        try {
+            recovery = RenameJournal.recover(RenameJournal.getDefaultPath());
+        } catch (IOException e) {
+            this.statusLabel.setText(String.format("The rename journal cannot be read: %s", e.getMessage()));
+            return false;
+        }
+        if(recovery == null) {
+            return true;
+        }
+
+        ButtonType complete = new ButtonType("Complete renaming");
+        ButtonType rollBack = new ButtonType("Roll back");
+        ButtonType later = new ButtonType("Decide later", ButtonBar.ButtonData.CANCEL_CLOSE);
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, null, complete, rollBack, later);
+        alert.setTitle("Rename interrupted");
+        alert.setHeaderText("Renaming files was interrupted");
+        alert.setContentText(String.format("Renaming %d files was interrupted after %d files. Should the remaining files be renamed, or the renamed files be renamed back?",
+                recovery.getMoves().size(), recovery.getDoneCount()));
+        ButtonType result = alert.showAndWait().orElse(later);
+        if(result == later) {
+            return false;
+        }
+
+        Task<Integer> task = new Task<>() {
+            @Override
+            protected Integer call() throws IOException {
+                updateMessage("Recovering the interrupted rename");
+                RenameExecutor.Listener listener = new RenameExecutor.Listener() {
+                    @Override
+                    public void onMoved(RenamePlan.Move move) {
+                    }
+
+                    @Override
+                    public void onFailed(RenamePlan.Move move, IOException e) {
+                        recordRenameError(move, e);
+                    }
+                };
+                int moved = result == complete ? recovery.rollForward(listener) : recovery.rollBack(listener);
+                updateMessage(String.format("Recovered the interrupted rename, %d files renamed", moved));
+                return moved;
+            }
+        };
+        this.runTask(task, "rename-recovery");
+        return false;
+    }
+
+    /**
+     * Loads the thumbnail of the given JpgFile in the background and displays it once it is loaded.
+     * Afterwards, the thumbnails of the neighbouring files are loaded, so stepping through the files does not wait for decoding.
+     * @param jpgFile the JpgFile, allowed to be null
+     */
+    private void showThumbnail(JpgFile jpgFile) {
+        this.thumbnailRequest = jpgFile;
+        this.setThumbnail(null);
+        if(jpgFile == null) {
+            return;
+        }
+        int index = this.fileTable.getSelectionModel().getSelectedIndex();
+        List<JpgFile> neighbours = new ArrayList<>(2);
+        if(index + 1 < this.fileList.size()) {
+            neighbours.add(this.fileList.get(index + 1));
+        }
+        if(index > 0) {
+            neighbours.add(this.fileList.get(index - 1));
+        }
+        this.thumbnailExecutor.execute(() -> {
+            if(this.thumbnailRequest != jpgFile) {
+                return;
+            }
+            Image thumbnail = toFxImage(jpgFile.getThumbnail());
+            String cacheStatistics = ThumbnailCache.getDefault().toString();
+            Platform.runLater(() -> {
+                this.thumbnailTooltip.setText(cacheStatistics);
+                if(this.thumbnailRequest == jpgFile) {
+                    this.setThumbnail(thumbnail);
+                }
+            });
+            for (JpgFile neighbour : neighbours) {
+                if(this.thumbnailRequest != jpgFile) {
+                    return;
+                }
+                neighbour.getThumbnail();
+            }
+        });
+    }
+
+    /**
+     * Converts the thumbnail picture into a JavaFX image. The returned image shares the pixel array
+     * of an ARGB image, so no pixels are copied one by one. This method may be called from any thread.
+     * @param image the thumbnail, allowed to be null
+     * @return the JavaFX image, or null, if no thumbnail is given
+     */
+    private static Image toFxImage(BufferedImage image) {
+        if(image == null) {
+            return null;
+        }
+        BufferedImage argbImage = image;
+        if(image.getType() != BufferedImage.TYPE_INT_ARGB_PRE) {
+            argbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+            Graphics2D graphics = argbImage.createGraphics();
+            try {
+                graphics.drawImage(image, 0, 0, null);
+            } finally {
+                graphics.dispose();
+            }
+        }
+        int[] pixels = ((DataBufferInt) argbImage.getRaster().getDataBuffer()).getData();
+        PixelBuffer<IntBuffer> pixelBuffer = new PixelBuffer<>(argbImage.getWidth(), argbImage.getHeight(),
+                IntBuffer.wrap(pixels), PixelFormat.getIntArgbPreInstance());
+        return new WritableImage(pixelBuffer);
+    }
+
+    /**
+     * Displays the thumbnail picture in the image view
+     * @param image the thumbnail, allowed to be null
+     */
+    private void setThumbnail(Image image) {
+        this.thumbnailImageView.setImage(image);
+    }
+
+    /**
+     * Runs the task in a background thread and shows its progress in the status bar until it is done.
+     * The task can be cancelled with the cancel button.
+     * @param task the task
+     * @param name the name of the background thread
+     */
+    private void runTask(Task<?> task, String name) {
+        this.runningTask = task;
+        this.renameAllButton.setDisable(true);
+        this.undoButton.setDisable(true);
+        this.redoButton.setDisable(true);
+        this.cancelButton.setVisible(true);
+        this.progressBar.setVisible(true);
+        this.progressBar.progressProperty().bind(task.progressProperty());
+        this.statusLabel.textProperty().bind(task.messageProperty());
+
+        EventHandler<WorkerStateEvent> onDone = event -> {
+            this.progressBar.progressProperty().unbind();
+            this.statusLabel.textProperty().unbind();
+            if(task.getException() != null) {
+                this.statusLabel.setText(task.getException().getMessage());
+            }
+            this.progressBar.setVisible(false);
+            this.cancelButton.setVisible(false);
+            this.renameAllButton.setDisable(false);
+            this.runningTask = null;
+            this.updateHistoryButtons();
+        };
+        task.setOnSucceeded(onDone);
+        task.setOnCancelled(onDone);
+        task.setOnFailed(onDone);
+
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Sets the background of the directory text field (white if input is ok, red otherwise)
+     * @param hasError true, if the input is invalid
+     */
+    private void setDirectoryTextFieldBackgroundColor(boolean hasError) {
+        if(hasError) {
+            directoryTextField.setStyle("-fx-control-inner-background: darkred");
+        } else {
+            directoryTextField.setStyle("-fx-control-inner-background: white");
+        }
+    }
+
+    /**
+     * Populates the file table by loading the directory content
+     * @param directory The directory to load
+     */
+    private void populateTable(File directory) {
+        boolean recursive = this.recursiveCheckbox.isSelected();
+        // cancels the previous load, so it stops reading files and does not mix its rows into the new directory
+        long generation = ++this.loadGeneration;
+        if(this.loadThread != null) {
+            this.loadThread.interrupt();
+        }
+        if(this.rowPublisher != null) {
+            this.rowPublisher.cancel();
+        }
+        this.fileList.clear();
+        this.errors.clear();
+        this.updateErrorsButton();
+        // the loaded files are added once per frame, the first one is selected as soon as it is shown
+        BatchPublisher<JpgFile> publisher = new BatchPublisher<>(this.fileList, () -> {
+            if(this.fileTable.getSelectionModel().isEmpty()) {
+                this.fileTable.getSelectionModel().select(0);
+            }
+        });
+        this.rowPublisher = publisher;
+        this.loadThread = new Thread(() -> {
+            // loading the directory content might take some time -> run in new thread to avoid UI freeze
+            // the files are loaded while the directory is still being listed, so the first rows appear immediately
+            DirectoryWalker.FileStream jpgFiles = walker.stream(directory.toPath(), recursive, (listedDirectory, e) -> {
+                if(generation == this.loadGeneration) {
+                    this.recordError(listedDirectory, ErrorCollector.Phase.LISTING, e);
+                }
+            });
+            MetadataIndex index = MetadataIndex.open(directory);
+            try {
+                RenameTemplate loadTemplate = this.template;
+                StringBuilder nameBuffer = new StringBuilder(64);
+                // the position of the file in the list; the loader calls back on this load thread, in the order of the listing
+                AtomicInteger position = new AtomicInteger();
+                JpgFileLoader.LoadStatistics statistics = loader.load(jpgFiles, index, metadata -> {
+                    JpgFile jpgFile = new JpgFile(metadata);
+                    int number = position.incrementAndGet();
+                    if(loadTemplate != RenameTemplate.DEFAULT) {
+                        jpgFile.applyTemplate(loadTemplate, number, nameBuffer);
+                    }
+                    publisher.publish(jpgFile);
+                }, (file, e) -> {
+                    if(generation == this.loadGeneration) {
+                        this.recordError(file.toPath(), ErrorCollector.Phase.LOADING, e);
+                    }
+                });
+                Platform.runLater(() -> {
+                    if(generation == this.loadGeneration) {
+                        this.statusLabel.setText(statistics.toString());
+                    }
+                });
+                index.save();
+            } catch (IOException e) {
+                // the index only speeds up reopening the directory, so the loaded files are still valid
+                Platform.runLater(() -> {
+                    if(generation == this.loadGeneration) {
+                        this.statusLabel.setText(String.format("Saving the metadata index failed: %s", e.getMessage()));
+                    }
+                });
+            } catch (InterruptedException e) {
+                // another directory has been opened, the partially loaded index is not saved
+                Thread.currentThread().interrupt();
+            } finally {
+                publisher.finish();
+                // stops the walk if loading has been interrupted
+                jpgFiles.close();
+            }
+        }, String.format("directory-loader-%d", generation));
+        this.loadThread.setDaemon(true);
+        this.loadThread.start();
+    }
+
+    //region event handlers
+
+    /**
+     * Handles the change of selection in the file table
+     * @param oldSelection previously selected JpgFile
+     * @param newSelection now selected JpgFile
+     */
+    private void onSelectionChanged(JpgFile oldSelection, JpgFile newSelection) {
+        if(oldSelection != null) {
+            this.newNameTextField.textProperty().unbindBidirectional(oldSelection.newNameProperty());
+        }
+        if(newSelection != null) {
+            // bind fields
+            this.currentNameLabel.textProperty().unbind();
+            this.currentNameLabel.textProperty().bind(newSelection.currentNameProperty());
+            this.dateTakenLabel.setText(newSelection.getTaken().toString());
+            this.resolutionLabel.setText(newSelection.getResolution());
+            this.newNameTextField.textProperty().unbind();
+            this.newNameTextField.textProperty().bindBidirectional(newSelection.newNameProperty());
+            this.showThumbnail(newSelection);
+        } else {
+            this.currentNameLabel.textProperty().unbind();
+            this.currentNameLabel.setText("no image selected");
+            this.dateTakenLabel.setText("no image selected");
+            this.resolutionLabel.setText("no image selected");
+            this.newNameTextField.textProperty().unbind();
+            this.newNameTextField.setText("");
+            this.showThumbnail(null);
+        }
+        this.renameButton.setDisable(newSelection == null);
+        this.prevButton.setDisable(newSelection == null || fileTable.getSelectionModel().getSelectedIndex() == 0);
+        this.nextButton.setDisable(newSelection == null || fileTable.getSelectionModel().getSelectedIndex()+1 >= fileTable.getItems().size());
+    }
+
+    /**
+     * Handles the completion of editing the directory input field
+     */
+    @FXML
+    protected void onDirectoryTextEnter() {
+        File directory = new File(directoryTextField.getText());
+        if(directory.exists() && directory.isDirectory()) {
+            setDirectoryTextFieldBackgroundColor(false);
+            this.populateTable(directory);
+        } else {
+            setDirectoryTextFieldBackgroundColor(true);
+        }
+    }
+
+    /**
+     * Handles toggling the subfolder checkbox by reloading the opened directory
+     */
+    @FXML
+    protected void onRecursiveToggled() {
+        File directory = new File(directoryTextField.getText());
+        if(!directoryTextField.getText().isBlank() && directory.isDirectory()) {
+            this.populateTable(directory);
+        }
+    }
+
+    /**
+     * Handles clicking the browse button by opening a directory chooser
+     */
+    @FXML
+    protected void onBrowseClicked() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        File result = directoryChooser.showDialog(directoryTextField.getScene().getWindow());
+        if(result != null) {
+            directoryTextField.setText(result.getAbsolutePath());
+            setDirectoryTextFieldBackgroundColor(false);
+            this.populateTable(result);
+        }
+    }
+
+    /**
+     * Handles applying the name template by compiling it and suggesting new names for all JpgFiles
+     */
+    @FXML
+    protected void onTemplateApplied() {
+        String text = this.templateTextField.getText();
+        try {
+            this.template = text == null || text.isBlank() ? RenameTemplate.DEFAULT : RenameTemplate.compile(text);
+        } catch (IllegalArgumentException e) {
+            this.statusLabel.setText(String.format("Invalid template: %s", e.getMessage()));
+            return;
+        }
+        long start = System.nanoTime();
+        StringBuilder buffer = new StringBuilder(64);
+        for (int i = 0; i < this.fileList.size(); i++) {
+            this.fileList.get(i).applyTemplate(this.template, i + 1, buffer);
+        }
+        this.statusLabel.setText(String.format("Applied the template to %d files in %d ms", this.fileList.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Handles clicking the previous button by selecting the previous element in the table
+     */
+    @FXML
+    protected void onPrevClicked() {
+        int currentSelection = this.fileTable.getSelectionModel().getSelectedIndex();
+        if(currentSelection-1 >= 0 && !this.fileTable.getItems().isEmpty()) {
+            this.fileTable.getSelectionModel().select(currentSelection-1);
+        }
+    }
+
+    /**
+     * Handles clicking the next button by selecting the next element in the table
+     */
+    @FXML
+    protected void onNextClicked() {
+        int currentSelection = this.fileTable.getSelectionModel().getSelectedIndex();
+        if(this.fileTable.getItems().size() > currentSelection+1) {
+            this.fileTable.getSelectionModel().select(currentSelection+1);
+        }
+    }
+
+    /**
+     * Handles clicking the rename button by renaming the currently selected JpgFile to the given new name
+     */
+    @FXML
+    protected void onRenameClicked() {
+        JpgFile jpgFile = this.fileTable.getSelectionModel().getSelectedItem();
+        String oldName = jpgFile.getCurrentName();
+        String newName = jpgFile.newNameProperty().getValue();
+        Path source = jpgFile.getImageFile().toPath();
+        try {
+            jpgFile.renameFile();
+        } catch (IOException e) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Rename failed");
+            alert.setHeaderText("Renaming the file failed");
+            alert.setContentText(String.format("Renaming the file \"%s\" to \"%s\" failed: %s", oldName, newName, e.getMessage()));
+            alert.showAndWait();
+        }
+        Path target = jpgFile.getImageFile().toPath();
+        if(!source.equals(target)) {
+            this.history.record(List.of(new RenamePlan.Move(source, target)));
+            this.updateHistoryButtons();
+        }
+    }
+
+    /**
+     * Handles clicking the rename all button by renaming all JpgFiles loaded from the directory in the background.
+     * If the checkbox is ticked, naming conflicts will be resolved automatically.
+     * A rename batch interrupted by a crash has to be recovered first.
+     */
+    @FXML
+    protected void onRenameAllClicked() {
+        if(!this.recoverRenameJournal()) {
+            return;
+        }
+        boolean resolveNamingConflicts = this.fixConflictsCheckbox.isSelected();
+        RenameTask task = new RenameTask(this.fileList, resolveNamingConflicts, this::recordRenameError, this.history::record);
+        this.runTask(task, "rename-all");
+    }
+
+    /**
+     * Handles clicking the undo button by renaming the files of the last rename batch back in the background
+     */
+    @FXML
+    protected void onUndoClicked() {
+        if(!this.recoverRenameJournal()) {
+            return;
+        }
+        RenameTask task = new RenameTask(this.history.getUndoRequests(), this.fileList, false, this::recordRenameError, this.history::undone);
+        this.runTask(task, "rename-undo");
+    }
+
+    /**
+     * Handles clicking the redo button by renaming the files of the last undone rename batch again in the background
+     */
+    @FXML
+    protected void onRedoClicked() {
+        if(!this.recoverRenameJournal()) {
+            return;
+        }
+        RenameTask task = new RenameTask(this.history.getRedoRequests(), this.fileList, false, this::recordRenameError, this.history::redone);
+        this.runTask(task, "rename-redo");
+    }
+
+    /**
+     * Enables the undo and redo buttons, if there is a rename batch to undo or redo
+     */
+    private void updateHistoryButtons() {
+        this.undoButton.setDisable(!this.history.canUndo());
+        this.redoButton.setDisable(!this.history.canRedo());
+    }
+
+    /**
+     * Records a file which could not be renamed. May be called from any thread.
+     * @param move the failed move
+     * @param e the cause
+     */
+    private void recordRenameError(RenamePlan.Move move, IOException e) {
+        this.recordError(move.source(), ErrorCollector.Phase.RENAMING, e);
+    }
+
+    /**
+     * Records a failure and schedules updating the errors button, unless it is already scheduled.
+     * May be called from any thread; many failures in a row cause a single update of the UI.
+     * @param path the file or directory which failed
+     * @param phase the phase in which it failed
+     * @param e the cause
+     */
+    private void recordError(Path path, ErrorCollector.Phase phase, Exception e) {
+        this.errors.record(path, phase, e);
+        if(this.errorUpdateScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::updateErrorsButton);
+        }
+    }
+
+    /**
+     * Shows the number of collected errors on the errors button, which is hidden if there are none
+     */
+    private void updateErrorsButton() {
+        this.errorUpdateScheduled.set(false);
+        int count = this.errors.getCount();
+        this.errorsButton.setVisible(count > 0);
+        this.errorsButton.setText(count == 1 ? "1 error" : String.format("%d errors", count));
+    }
+
+    /**
+     * Handles clicking the errors button by showing the collected errors
+     */
+    @FXML
+    protected void onErrorsClicked() {
+        new ErrorReportDialog(this.errors).show();
+    }
+
+    /**
+     * Handles clicking the cancel button by cancelling the running background task.
+     * The thread is not interrupted, the renames stop when the task sees that it has been cancelled
+     * and the batch is committed, so no journal of an interrupted batch is left behind.
+     */
+    @FXML
+    protected void onCancelClicked() {
+        if(this.runningTask != null) {
+            this.runningTask.cancel(false);
+        }
+    }
+    //endregion
+
+
+}
\ No newline at end of file
@@ -0,0 +1,169 @@
+package de.oppermann.jpgrenamer;
+
+import de.oppermann.jpgrenamer.core.RenameExecutor;
+import de.oppermann.jpgrenamer.core.RenameJournal;
+import de.oppermann.jpgrenamer.core.RenamePlan;
+import de.oppermann.jpgrenamer.core.RenamePlanner;
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * This task renames a batch of files in the background.
+ * The whole batch is planned at once by a {@link RenamePlanner}, so naming conflicts are resolved without probing the file system per file.
+ * The files are moved on the background thread; the name properties of the renamed JpgFiles are published
+ * to the UI thread in coalesced batches, so the UI is not flooded with one update per file.
+ */
+public class RenameTask extends Task<Integer> {
+
+    private final List<RenamePlanner.Request> requests;
+
+    /**
+     * The JpgFiles to update after renaming, by their current absolute path. Only accessed by the background thread after construction.
+     */
+    private final Map<Path, JpgFile> files;
+
+    private final boolean resolveNamingConflicts;
+
+    private final BiConsumer<RenamePlan.Move, IOException> onError;
+
+    private final Consumer<List<RenamePlan.Move>> onExecuted;
+
+    /**
+     * The renamed files whose properties have not been published yet
+     */
+    private final ConcurrentLinkedQueue<JpgFile> renamed = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Whether publishing the renamed files has been scheduled on the UI thread
+     */
+    private final AtomicBoolean publishScheduled = new AtomicBoolean();
+
+    /**
+     * Creates a new task renaming the JpgFiles to their new names. Has to be called on the UI thread.
+     * @param files the files to rename
+     * @param resolveNamingConflicts determines, whether naming conflicts should be resolved
+     * @param onError called on the background thread for every file that could not be renamed
+     * @param onExecuted called on the background thread with the executed moves, also if the task has been cancelled
+     */
+    public RenameTask(List<JpgFile> files, boolean resolveNamingConflicts, BiConsumer<RenamePlan.Move, IOException> onError,
+                      Consumer<List<RenamePlan.Move>> onExecuted) {
+        this(files.stream().map(JpgFile::toRenameRequest).toList(), files, resolveNamingConflicts, onError, onExecuted);
+    }
+
+    /**
+     * Creates a new task executing the given renames. Has to be called on the UI thread.
+     * @param requests the renames
+     * @param files the JpgFiles whose properties are updated if they are renamed
+     * @param resolveNamingConflicts determines, whether naming conflicts should be resolved
+     * @param onError called on the background thread for every file that could not be renamed
+     * @param onExecuted called on the background thread with the executed moves, also if the task has been cancelled
+     */
+    public RenameTask(List<RenamePlanner.Request> requests, List<JpgFile> files, boolean resolveNamingConflicts,
+                      BiConsumer<RenamePlan.Move, IOException> onError, Consumer<List<RenamePlan.Move>> onExecuted) {
+        this.requests = List.copyOf(requests);
+        this.files = new HashMap<>();
+        for (JpgFile jpgFile : files) {
+            this.files.put(jpgFile.getImageFile().toPath().toAbsolutePath(), jpgFile);
+        }
+        this.resolveNamingConflicts = resolveNamingConflicts;
+        this.onError = onError;
+        this.onExecuted = onExecuted;
+    }
+
+    /**
+     * Plans all renames at once, then moves the files until all files are renamed or the task is cancelled
+     * @return the number of renamed files
+     * @throws IOException if the renames cannot be planned or journaled
+     */
+    @Override
+    protected Integer call() throws IOException {
+        RenamePlan plan = new RenamePlanner(resolveNamingConflicts).plan(requests);
+        for (RenamePlan.Move conflict : plan.getConflicts()) {
+            IOException e = new IOException(String.format("The file at \"%s\" already exists.", conflict.target().toAbsolutePath()));
+            onError.accept(conflict, e);
+        }
+
+        long start = System.nanoTime();
+        int total = plan.getMoves().size();
+        AtomicInteger movedCount = new AtomicInteger();
+        AtomicInteger failedCount = new AtomicInteger();
+        List<RenamePlan.Move> executed = new ArrayList<>(total);
+        try {
+            return new RenameExecutor(new RenameJournal(RenameJournal.getDefaultPath())).execute(plan, new RenameExecutor.Listener() {
+                @Override
+                public void onMoved(RenamePlan.Move move) {
+                    executed.add(move);
+                    JpgFile jpgFile = files.remove(move.source().toAbsolutePath());
+                    if(jpgFile != null) {
+                        // the file may be moved again, if it is moved through a temporary name
+                        files.put(move.target().toAbsolutePath(), jpgFile);
+                        jpgFile.setMoved(move.target());
+                        renamed.add(jpgFile);
+                        schedulePublish();
+                    }
+                    movedCount.incrementAndGet();
+                    updateProgress();
+                }
+
+                @Override
+                public void onFailed(RenamePlan.Move move, IOException e) {
+                    onError.accept(move, e);
+                    failedCount.incrementAndGet();
+                    updateProgress();
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return RenameTask.this.isCancelled();
+                }
+
+                private void updateProgress() {
+                    int moved = movedCount.get();
+                    int failed = failedCount.get();
+                    double seconds = (System.nanoTime() - start) / 1_000_000_000d;
+                    RenameTask.this.updateProgress(moved + failed, total);
+                    String message = String.format("Renamed %d of %d files", moved, total);
+                    if(failed > 0) {
+                        message += String.format(", %d failed", failed);
+                    }
+                    updateMessage(String.format("%s (%.0f files/s)", message, seconds > 0 ? (moved + failed) / seconds : 0));
+                }
+            });
+        } finally {
+            schedulePublish();
+            onExecuted.accept(executed);
+        }
+    }
+
+    /**
+     * Schedules publishing the renamed files on the UI thread, unless it is already scheduled
+     */
+    private void schedulePublish() {
+        if(publishScheduled.compareAndSet(false, true)) {
+            Platform.runLater(this::publish);
+        }
+    }
+
+    /**
+     * Publishes the name properties of all renamed files collected since the last call. Runs on the UI thread.
+     */
+    private void publish() {
+        publishScheduled.set(false);
+        JpgFile jpgFile;
+        while ((jpgFile = renamed.poll()) != null) {
+            jpgFile.publishRename();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package de.oppermann.jpgrenamer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * This class caches decoded thumbnails in memory. The cache is bounded by the number of bytes
+ * used by the pixel data of the thumbnails; the least recently used thumbnails are evicted first
+ * and are recreated by the loader on the next access.
+ * @param <K> the type of the keys
+ */
+public class ThumbnailCache<K> {
+
+    /**
+     * The system property used to configure the byte budget of the default cache
+     */
+    public static final String BUDGET_PROPERTY = "jpgrenamer.thumbnails.cacheBytes";
+
+    private static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+    private static final ThumbnailCache<JpgFile> DEFAULT = new ThumbnailCache<>(Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET));
+
+    //region fields
+    private final long budget;
+
+    private final LinkedHashMap<K, BufferedImage> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long size;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+    //endregion
+
+    /**
+     * Creates a new cache
+     * @param budget the maximum number of bytes used by the cached thumbnails
+     */
+    public ThumbnailCache(long budget) {
+        if(budget < 0) {
+            throw new IllegalArgumentException("The budget must not be negative");
+        }
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the cache used for the thumbnails of the JpgFiles
+     * @return the default cache
+     */
+    public static ThumbnailCache<JpgFile> getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the cached thumbnail for the key. On a miss, the thumbnail is created by the loader and added to the cache.
+     * The loader is called without holding the lock of the cache, so other threads are not blocked while decoding.
+     * @param key the key
+     * @param loader creates the thumbnail on a miss, may return null
+     * @return the thumbnail, or null, if the loader returns null
+     */
+    public BufferedImage get(K key, Supplier<BufferedImage> loader) {
+        synchronized (this) {
+            BufferedImage thumbnail = entries.get(key);
+            if(thumbnail != null) {
+                hits++;
+                return thumbnail;
+            }
+            misses++;
+        }
+        BufferedImage thumbnail = loader.get();
+        if(thumbnail != null) {
+            put(key, thumbnail);
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Adds a thumbnail to the cache and evicts the least recently used thumbnails until the cache fits its budget.
+     * Thumbnails larger than the budget are not cached.
+     * @param key the key
+     * @param thumbnail the thumbnail
+     */
+    private synchronized void put(K key, BufferedImage thumbnail) {
+        long thumbnailSize = sizeOf(thumbnail);
+        if(thumbnailSize > budget) {
+            return;
+        }
+        BufferedImage previous = entries.put(key, thumbnail);
+        if(previous != null) {
+            size -= sizeOf(previous);
+        }
+        size += thumbnailSize;
+        Iterator<Map.Entry<K, BufferedImage>> iterator = entries.entrySet().iterator();
+        while (size > budget && iterator.hasNext()) {
+            Map.Entry<K, BufferedImage> eldest = iterator.next();
+            size -= sizeOf(eldest.getValue());
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Removes the thumbnail of the key from the cache
+     * @param key the key
+     */
+    public synchronized void invalidate(K key) {
+        BufferedImage previous = entries.remove(key);
+        if(previous != null) {
+            size -= sizeOf(previous);
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by the pixel data of the thumbnail
+     * @param thumbnail the thumbnail
+     * @return the size (bytes)
+     */
+    private static long sizeOf(BufferedImage thumbnail) {
+        DataBuffer buffer = thumbnail.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    //region statistics
+
+    /**
+     * Returns the maximum number of bytes used by the cached thumbnails
+     * @return the budget (bytes)
+     */
+    public long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the number of bytes used by the cached thumbnails
+     * @return the size (bytes)
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the number of cached thumbnails
+     * @return the number of cached thumbnails
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of accesses which found the thumbnail in the cache
+     * @return the number of hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of accesses which had to load the thumbnail
+     * @return the number of misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the number of thumbnails evicted to keep the cache within its budget
+     * @return the number of evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("Thumbnail cache: %d thumbnails, %.1f of %.1f MB, %d hits, %d misses, %d evictions",
+                entries.size(), size / 1048576d, budget / 1048576d, hits, misses, evictions);
+    }
+
+    //endregion
+}
@@ -1,6 +1,7 @@
 module de.oppermann.jpgrenamer {
     requires javafx.controls;
     requires javafx.fxml;
+    requires de.oppermann.jpgrenamer.core;
     requires org.apache.commons.imaging;
     requires java.desktop;
 